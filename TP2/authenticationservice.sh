@@ -6,7 +6,8 @@ popd > /dev/null
 
 cat << EndOfMessage
 HELP: 
-./authenticationservice.sh
+./authenticationservice.sh [--<propriete>=<valeur>]
+	- --<propriete>: (OPTIONAL) Remplace une propriete d'application.properties (ex. --rmiPort=5031)
 
 EndOfMessage
 
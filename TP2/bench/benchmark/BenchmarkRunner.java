@@ -0,0 +1,171 @@
+package benchmark;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Petit harnais de micro-benchmarks : iterations de rechauffement, puis iterations mesurees
+ * dont on garde la moyenne et l'ecart type. Les resultats sont ecrits en CSV
+ * (benchmark,param,score,error,unit) et peuvent etre compares a un fichier de reference.
+ * **/
+public class BenchmarkRunner {
+
+    public interface Action
+    {
+        long run() throws Exception;
+    }
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 10;
+    private static final long ITERATION_NANOS = 100000000L; // 100 ms
+
+    private final List<String[]> results = new ArrayList<>();
+    private long blackhole = 0;
+
+    /**
+     * Measures the mean time of one call of the action, in the given unit (ns, us, ms or s)
+     * **/
+    public void measure(String benchmark, String param, String unit, Action action) throws Exception
+    {
+        // Calibrate the number of calls so that one iteration lasts about ITERATION_NANOS
+        long calls = 1;
+        long elapsed;
+        while((elapsed = runCalls(action, calls)) < ITERATION_NANOS / 10 && calls < (1L << 30))
+        {
+            calls *= 2;
+        }
+        calls = Math.max(1, calls * ITERATION_NANOS / Math.max(1, elapsed));
+
+        for(int i = 0; i < WARMUP_ITERATIONS; i++)
+        {
+            runCalls(action, calls);
+        }
+
+        double[] scores = new double[MEASURED_ITERATIONS];
+        for(int i = 0; i < MEASURED_ITERATIONS; i++)
+        {
+            scores[i] = runCalls(action, calls) / (double) calls / unitNanos(unit);
+        }
+        record(benchmark, param, mean(scores), standardDeviation(scores), unit);
+    }
+
+    /**
+     * Measures an action that lasts long enough to be timed once per iteration, such as a whole job
+     * **/
+    public void measureOnce(String benchmark, String param, int iterations, Action action) throws Exception
+    {
+        action.run();
+        double[] scores = new double[iterations];
+        for(int i = 0; i < iterations; i++)
+        {
+            scores[i] = runCalls(action, 1) / 1E9;
+        }
+        record(benchmark, param, mean(scores), standardDeviation(scores), "s");
+    }
+
+    public void record(String benchmark, String param, double score, double error, String unit)
+    {
+        results.add(new String[] { benchmark, param, format(score), format(error), unit });
+        System.out.println(String.format("%-40s %-20s %14s +- %-12s %s", benchmark, param, format(score), format(error), unit));
+    }
+
+    public void writeCsv(File file) throws IOException
+    {
+        try (PrintWriter out = new PrintWriter(new FileWriter(file)))
+        {
+            out.println("benchmark,param,score,error,unit");
+            for(String[] result : results)
+            {
+                out.println(String.join(",", result));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of results that are more than tolerance (0.2 = 20%) above the baseline
+     * **/
+    public int compareToBaseline(File baselineFile, double tolerance) throws IOException
+    {
+        Map<String, Double> baseline = new HashMap<>();
+        try (BufferedReader in = new BufferedReader(new FileReader(baselineFile)))
+        {
+            String line = in.readLine(); // header
+            while((line = in.readLine()) != null)
+            {
+                String[] columns = line.split(",");
+                baseline.put(columns[0] + "," + columns[1], Double.parseDouble(columns[2]));
+            }
+        }
+
+        int nbRegressions = 0;
+        for(String[] result : results)
+        {
+            Double baselineScore = baseline.get(result[0] + "," + result[1]);
+            double score = Double.parseDouble(result[2]);
+            if(baselineScore != null && !result[4].equals("bytes") && score > baselineScore * (1 + tolerance))
+            {
+                System.out.println("REGRESSION: " + result[0] + " " + result[1] + " " + result[2] + " " + result[4]
+                        + " (baseline " + format(baselineScore) + ")");
+                nbRegressions++;
+            }
+        }
+        return nbRegressions;
+    }
+
+    private long runCalls(Action action, long calls) throws Exception
+    {
+        long start = System.nanoTime();
+        for(long i = 0; i < calls; i++)
+        {
+            blackhole += action.run();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static double unitNanos(String unit)
+    {
+        switch (unit)
+        {
+            case "us": return 1E3;
+            case "ms": return 1E6;
+            case "s": return 1E9;
+            default: return 1;
+        }
+    }
+
+    private static double mean(double[] values)
+    {
+        double sum = 0;
+        for(double value : values)
+        {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    private static double standardDeviation(double[] values)
+    {
+        double mean = mean(values);
+        double sum = 0;
+        for(double value : values)
+        {
+            sum += (value - mean) * (value - mean);
+        }
+        return values.length > 1 ? Math.sqrt(sum / (values.length - 1)) : 0;
+    }
+
+    private static String format(double value)
+    {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    // Keeps the JIT from removing the measured code
+    public long getBlackhole()
+    {
+        return blackhole;
+    }
+}
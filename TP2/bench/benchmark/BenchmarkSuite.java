@@ -0,0 +1,45 @@
+package benchmark;
+
+import loadbalancer.SchedulerBenchmark;
+import loadbalancer.SchedulingStrategyBenchmark;
+
+import java.io.File;
+
+/**
+ * Lance tous les benchmarks et ecrit les resultats dans bench-results.csv.
+ * Si bench-baseline.csv existe, chaque resultat plus lent de plus de 20% est signale
+ * et la commande echoue.
+ *
+ * Lancer avec 'ant bench' dans le repertoire TP2.
+ * **/
+public class BenchmarkSuite {
+
+    private static final File RESULTS_FILE = new File("bench-results.csv");
+    private static final File BASELINE_FILE = new File("bench-baseline.csv");
+    private static final double REGRESSION_TOLERANCE = 0.2;
+
+    public static void main(String[] args) throws Exception
+    {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        OperationsBenchmark.run(runner);
+        CalculateResultBenchmark.run(runner);
+        TaskEncodingBenchmark.run(runner);
+        RegistryBenchmark.run(runner);
+        MetricsBenchmark.run(runner);
+        SchedulerBenchmark.run(runner);
+        SchedulingStrategyBenchmark.run(runner);
+
+        runner.writeCsv(RESULTS_FILE);
+        System.out.println("Results written to " + RESULTS_FILE + ".");
+
+        if(BASELINE_FILE.exists())
+        {
+            int nbRegressions = runner.compareToBaseline(BASELINE_FILE, REGRESSION_TOLERANCE);
+            if(nbRegressions > 0)
+            {
+                System.err.println(nbRegressions + " regressions compared to " + BASELINE_FILE + ".");
+                System.exit(1);
+            }
+        }
+    }
+}
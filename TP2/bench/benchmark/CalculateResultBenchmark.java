@@ -0,0 +1,35 @@
+package benchmark;
+
+import operationserver.OperationEngine;
+import operationserver.ResultCache;
+import operationserver.TaskCalculator;
+import shared.PackedTask;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Boucle d'analyse et d'evaluation de calculateResult, sans RMI : une tache de 8 operations
+ * (2 * capacite 4) prise dans operations-1, avec et sans cache de resultats.
+ * **/
+public class CalculateResultBenchmark {
+
+    private static final int TASK_SIZE = 8;
+
+    public static void run(BenchmarkRunner runner) throws Exception
+    {
+        List<String> allOperations = Files.readAllLines(Paths.get("operations", "operations-1"));
+        ArrayList<String> task = new ArrayList<>(allOperations.subList(0, TASK_SIZE));
+
+        for(OperationEngine engine : OperationEngine.values())
+        {
+            String name = engine.name().toLowerCase();
+            TaskCalculator uncached = new TaskCalculator(engine, new ResultCache(0), 1);
+            TaskCalculator cached = new TaskCalculator(engine, new ResultCache(4L * 1024 * 1024), 1);
+            runner.measure("calculateResult." + name, "cache=off", "us", () -> uncached.calculate(PackedTask.parse(task)));
+            runner.measure("calculateResult." + name, "cache=on", "us", () -> cached.calculate(PackedTask.parse(task)));
+        }
+    }
+}
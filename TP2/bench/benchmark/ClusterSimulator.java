@@ -0,0 +1,322 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Grappe complete sur une seule machine, pour refaire les tableaux du README sans les machines du labo.
+ *
+ * Le registre RMI tourne dans ce processus ; le service d'authentification, les N serveurs de calcul et
+ * le repartiteur sont des JVM separees (les jars de 'ant', comme les scripts .sh) qui se parlent en RMI
+ * sur 127.0.0.1. Les proprietes sont passees en -D (serviceIp, rmiPort, servicePort, secure, checkpoint) :
+ * application.properties n'est pas modifie. Pour chaque mode et nombre de serveurs, et en mode
+ * non-securise pour chaque taux malicieux, la grappe est lancee une fois et le repartiteur --runs fois
+ * (comme les mesures du README : le cache des serveurs est chaud apres le premier essai, --server-args=--cache-mb=0
+ * pour l'enlever). Une ligne CSV par configuration ; les sorties des processus sont dans --logs.
+ *
+ * Usage : ant simulate -Dsimulate.args="--modes=secure,insecure --servers=2,3,4 --malicious=0,50,75"
+ *   --modes=secure|insecure,...     (defaut secure)
+ *   --servers=2,3,4                 nombres de serveurs (defaut 2,3,4)
+ *   --malicious=0,50                taux de resultats faux des serveurs malicieux, mode non-securise (defaut 0)
+ *   --malicious-servers=1           nombre de serveurs malicieux parmi les N (defaut 1)
+ *   --capacity=4 --runs=3 --operations=operations-1 --timeout=600 (s, par execution du repartiteur)
+ *   --server-args=--engine=fast,--cache-mb=0   options des serveurs, separees par des virgules
+ *   --output=simulation.csv --logs=simulation-logs --rmi-port=5031
+ * **/
+public class ClusterSimulator {
+
+    private static final String HOST = "127.0.0.1";
+    private static final long STARTUP_TIMEOUT_MILLIS = 30000;
+    private static final Pattern TIME = Pattern.compile("Temps pour \\d+ serveurs : ([0-9.E-]+) s");
+    private static final Pattern RESULT = Pattern.compile("Resultat final : (-?\\d+)\\.");
+    private static final Pattern MISMATCHES = Pattern.compile("Resultats en desaccord : (\\d+)");
+
+    private final List<String> modes;
+    private final int[] serverCounts;
+    private final int[] maliciousRates;
+    private final int nbMaliciousServers;
+    private final int capacity;
+    private final int nbRuns;
+    private final String operationsFilename;
+    private final long timeoutSeconds;
+    private final List<String> serverArgs;
+    private final File logsDirectory;
+    private final int rmiPort;
+
+    public static void main(String[] args) throws Exception
+    {
+        String modes = "secure";
+        String servers = "2,3,4";
+        String malicious = "0";
+        int nbMaliciousServers = 1;
+        int capacity = 4;
+        int nbRuns = 3;
+        String operations = "operations-1";
+        long timeoutSeconds = 600;
+        String serverArgs = "";
+        String output = "simulation.csv";
+        String logs = "simulation-logs";
+        int rmiPort = 5031;
+        for(String arg : args)
+        {
+            int separator = arg.indexOf('=');
+            String value = arg.substring(separator + 1);
+            switch (separator < 0 ? arg : arg.substring(0, separator))
+            {
+                case "--modes":
+                    modes = value;
+                    break;
+                case "--servers":
+                    servers = value;
+                    break;
+                case "--malicious":
+                    malicious = value;
+                    break;
+                case "--malicious-servers":
+                    nbMaliciousServers = Integer.parseInt(value);
+                    break;
+                case "--capacity":
+                    capacity = Integer.parseInt(value);
+                    break;
+                case "--runs":
+                    nbRuns = Integer.parseInt(value);
+                    break;
+                case "--operations":
+                    operations = value;
+                    break;
+                case "--timeout":
+                    timeoutSeconds = Long.parseLong(value);
+                    break;
+                case "--server-args":
+                    serverArgs = value;
+                    break;
+                case "--output":
+                    output = value;
+                    break;
+                case "--logs":
+                    logs = value;
+                    break;
+                case "--rmi-port":
+                    rmiPort = Integer.parseInt(value);
+                    break;
+                default:
+                    System.err.println("Error: Unknown param " + arg);
+                    return;
+            }
+        }
+
+        ClusterSimulator simulator = new ClusterSimulator(Arrays.asList(modes.split(",")), parseInts(servers), parseInts(malicious),
+                nbMaliciousServers, capacity, nbRuns, operations, timeoutSeconds,
+                serverArgs.isEmpty() ? new ArrayList<>() : Arrays.asList(serverArgs.split(",")), new File(logs), rmiPort);
+        simulator.run(new File(output));
+    }
+
+    public ClusterSimulator(List<String> modes, int[] serverCounts, int[] maliciousRates, int nbMaliciousServers, int capacity,
+                            int nbRuns, String operationsFilename, long timeoutSeconds, List<String> serverArgs, File logsDirectory,
+                            int rmiPort)
+    {
+        this.modes = modes;
+        this.serverCounts = serverCounts;
+        this.maliciousRates = maliciousRates;
+        this.nbMaliciousServers = nbMaliciousServers;
+        this.capacity = capacity;
+        this.nbRuns = nbRuns;
+        this.operationsFilename = operationsFilename;
+        this.timeoutSeconds = timeoutSeconds;
+        this.serverArgs = serverArgs;
+        this.logsDirectory = logsDirectory;
+        this.rmiPort = rmiPort;
+    }
+
+    public void run(File outputFile) throws Exception
+    {
+        Files.createDirectories(logsDirectory.toPath());
+        Registry registry = LocateRegistry.createRegistry(rmiPort);
+        try (PrintWriter out = new PrintWriter(outputFile))
+        {
+            out.println("mode,servers,maliciousServers,maliciousRate,capacity,runs,meanSeconds,stddevSeconds,minSeconds,maxSeconds,"
+                    + "meanMismatches,result");
+            System.out.println(String.format("%-9s %7s %9s %9s %12s %12s %10s", "mode", "servers", "malicious", "rate",
+                    "mean (s)", "stddev (s)", "result"));
+            for(String mode : modes)
+            {
+                boolean secure = mode.equals("secure");
+                for(int nbServers : serverCounts)
+                {
+                    // The servers ignore the malicious rate in secure mode
+                    for(int maliciousRate : secure ? new int[] { 0 } : maliciousRates)
+                    {
+                        String row = simulate(secure, nbServers, maliciousRate);
+                        out.println(row);
+                        out.flush();
+                    }
+                }
+            }
+        }
+        finally
+        {
+            UnicastRemoteObject.unexportObject(registry, true);
+        }
+        System.out.println("Results written to " + outputFile + ", process outputs in " + logsDirectory + ".");
+    }
+
+    // Starts the cluster, runs the load balancer nbRuns times and returns the CSV row
+    private String simulate(boolean secure, int nbServers, int maliciousRate) throws Exception
+    {
+        String mode = secure ? "secure" : "insecure";
+        int nbMalicious = maliciousRate == 0 ? 0 : Math.min(nbMaliciousServers, nbServers);
+        String name = mode + "-" + nbServers + "-" + maliciousRate;
+        List<Process> cluster = new ArrayList<>();
+        double[] times = new double[nbRuns];
+        double mismatches = 0;
+        String result = "";
+        try
+        {
+            File authenticationLog = new File(logsDirectory, name + "-authenticationservice.log");
+            cluster.add(start(command(secure, "authenticationservice.jar", "service.AuthenticationService"), authenticationLog));
+            awaitLine(authenticationLog, "AuthenticationService ready.");
+
+            for(int i = 0; i < nbServers; i++)
+            {
+                // The last servers are the malicious ones
+                int rate = i >= nbServers - nbMalicious ? maliciousRate : 0;
+                List<String> command = command(secure, "operationserver.jar", "operationserver.OperationServer");
+                command.addAll(Arrays.asList(HOST, String.valueOf(rmiPort + 1 + i), String.valueOf(capacity), String.valueOf(rate)));
+                command.addAll(serverArgs);
+                File serverLog = new File(logsDirectory, name + "-operationserver" + (i + 1) + ".log");
+                cluster.add(start(command, serverLog));
+                awaitLine(serverLog, "OperationServer ready.");
+            }
+
+            for(int run = 0; run < nbRuns; run++)
+            {
+                List<String> command = command(secure, "loadbalancer.jar", "loadbalancer.LoadBalancer");
+                command.addAll(Arrays.asList("simulator", "simulator", operationsFilename));
+                File loadBalancerLog = new File(logsDirectory, name + "-loadbalancer" + (run + 1) + ".log");
+                Process loadBalancer = start(command, loadBalancerLog);
+                if(!loadBalancer.waitFor(timeoutSeconds, TimeUnit.SECONDS))
+                {
+                    loadBalancer.destroyForcibly();
+                    throw new IOException("The load balancer did not finish within " + timeoutSeconds + " s, see " + loadBalancerLog);
+                }
+                String output = new String(Files.readAllBytes(loadBalancerLog.toPath()));
+                times[run] = Double.parseDouble(find(TIME, output, loadBalancerLog));
+                String runResult = find(RESULT, output, loadBalancerLog);
+                if(!result.isEmpty() && !result.equals(runResult))
+                {
+                    System.err.println("Error: " + name + " gave " + result + " then " + runResult + ".");
+                }
+                result = runResult;
+                Matcher mismatchesMatcher = MISMATCHES.matcher(output);
+                if(mismatchesMatcher.find())
+                {
+                    mismatches += Integer.parseInt(mismatchesMatcher.group(1)) / (double) nbRuns;
+                }
+            }
+        }
+        finally
+        {
+            for(Process process : cluster)
+            {
+                // Shutdown hooks unregister the servers from the service
+                process.destroy();
+            }
+            for(Process process : cluster)
+            {
+                if(!process.waitFor(5, TimeUnit.SECONDS))
+                {
+                    process.destroyForcibly();
+                }
+            }
+        }
+
+        double mean = 0;
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        for(double time : times)
+        {
+            mean += time / nbRuns;
+            min = Math.min(min, time);
+            max = Math.max(max, time);
+        }
+        double variance = 0;
+        for(double time : times)
+        {
+            variance += nbRuns < 2 ? 0 : (time - mean) * (time - mean) / (nbRuns - 1);
+        }
+        System.out.println(String.format("%-9s %7d %9d %9d %12.3f %12.3f %10s", mode, nbServers, nbMalicious, maliciousRate,
+                mean, Math.sqrt(variance), result));
+        return mode + "," + nbServers + "," + nbMalicious + "," + maliciousRate + "," + capacity + "," + nbRuns + ","
+                + String.format("%.3f,%.3f,%.3f,%.3f,%.1f", mean, Math.sqrt(variance), min, max, mismatches) + "," + result;
+    }
+
+    // Same options as the .sh scripts, with the properties that differ from application.properties
+    private List<String> command(boolean secure, String jar, String mainClass)
+    {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.add("-cp");
+        command.add(new File(jar).getAbsolutePath() + File.pathSeparator + new File("shared.jar").getAbsolutePath());
+        command.add("-Djava.rmi.server.codebase=file:" + new File("shared.jar").getAbsolutePath());
+        command.add("-Djava.security.policy=" + new File("policy").getAbsolutePath());
+        command.add("-Djava.rmi.server.hostname=" + HOST);
+        command.add("-DserviceIp=" + HOST);
+        command.add("-DrmiPort=" + rmiPort);
+        command.add("-DservicePort=" + (rmiPort - 1));
+        command.add("-Dsecure=" + secure);
+        command.add("-Dcheckpoint=false"); // a journal left by a timed out run would shorten the next one
+        command.add(mainClass);
+        return command;
+    }
+
+    private static Process start(List<String> command, File log) throws IOException
+    {
+        return new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+    }
+
+    // Waits until the process wrote the line in its log
+    private static void awaitLine(File log, String line) throws IOException, InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while(!log.exists() || !new String(Files.readAllBytes(log.toPath())).contains(line + System.lineSeparator()))
+        {
+            if(System.currentTimeMillis() > deadline)
+            {
+                throw new IOException("\"" + line + "\" not found in " + log + " after " + STARTUP_TIMEOUT_MILLIS + " ms");
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private static String find(Pattern pattern, String output, File log) throws IOException
+    {
+        Matcher matcher = pattern.matcher(output);
+        if(!matcher.find())
+        {
+            throw new IOException("\"" + pattern.pattern() + "\" not found in " + log);
+        }
+        return matcher.group(1);
+    }
+
+    private static int[] parseInts(String values)
+    {
+        String[] parts = values.split(",");
+        int[] ints = new int[parts.length];
+        for(int i = 0; i < parts.length; i++)
+        {
+            ints[i] = Integer.parseInt(parts[i].trim());
+        }
+        return ints;
+    }
+}
@@ -0,0 +1,47 @@
+package benchmark;
+
+import com.sun.management.ThreadMXBean;
+import shared.Histogram;
+import shared.Metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cout d'un enregistrement de metrique sur le chemin chaud (compteur et histogramme),
+ * et memoire allouee par enregistrement, qui doit rester nulle.
+ * **/
+public class MetricsBenchmark {
+
+    private static final int NB_RECORDS = 10000000;
+
+    public static void run(BenchmarkRunner runner) throws Exception
+    {
+        Metrics metrics = new Metrics("bench");
+        LongAdder counter = metrics.counter("counter");
+        Histogram histogram = metrics.histogram("histogram");
+
+        runner.measure("metrics.counter.increment", "", "ns", () ->
+        {
+            counter.increment();
+            return 0;
+        });
+        long[] value = { 0 };
+        runner.measure("metrics.histogram.record", "", "ns", () ->
+        {
+            histogram.record(value[0]++ * 7919);
+            return 0;
+        });
+
+        ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        for(int i = 0; i < NB_RECORDS; i++)
+        {
+            counter.increment();
+            histogram.record(i);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        runner.record("metrics.allocatedPerRecord", "", allocated / (double) NB_RECORDS, 0, "bytes");
+    }
+}
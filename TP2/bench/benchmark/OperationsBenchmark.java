@@ -0,0 +1,28 @@
+package benchmark;
+
+import operationserver.OperationEngine;
+
+/**
+ * Cout de pell et prime pour chaque moteur, sur les bornes des operandes des fichiers d'operations.
+ * **/
+public class OperationsBenchmark {
+
+    private static final int[] PELL_OPERANDS = { 20, 25 };
+    private static final int[] PRIME_OPERANDS = { 5002, 9993 };
+
+    public static void run(BenchmarkRunner runner) throws Exception
+    {
+        for(OperationEngine engine : OperationEngine.values())
+        {
+            String name = engine.name().toLowerCase();
+            for(int operand : PELL_OPERANDS)
+            {
+                runner.measure("operations." + name + ".pell", "x=" + operand, "us", () -> engine.pell(operand));
+            }
+            for(int operand : PRIME_OPERANDS)
+            {
+                runner.measure("operations." + name + ".prime", "x=" + operand, "us", () -> engine.prime(operand));
+            }
+        }
+    }
+}
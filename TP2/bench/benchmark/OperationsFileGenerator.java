@@ -0,0 +1,35 @@
+package benchmark;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Genere un fichier d'operations aleatoires semblable a ceux du repertoire operations.
+ *
+ * Usage : OperationsFileGenerator nb_lines output_file
+ * **/
+public class OperationsFileGenerator {
+
+    public static void main(String[] args) throws IOException
+    {
+        long nbLines = Long.parseLong(args[0]);
+        Random random = new Random(8480);
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(args[1]), 1 << 16))
+        {
+            for(long i = 0; i < nbLines; i++)
+            {
+                if(random.nextBoolean())
+                {
+                    out.write("pell " + (20 + random.nextInt(6)));
+                }
+                else
+                {
+                    out.write("prime " + (5000 + random.nextInt(5000)));
+                }
+                out.write('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package benchmark;
+
+import loadbalancer.OperationsReader;
+import shared.PackedTask;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+
+/**
+ * Temps avant la premiere tache et pic de memoire du tas pour lire un gros fichier d'operations :
+ * mode "load" (ancien readOperationsFile : tout le fichier en ArrayList<String>) ou "stream" (OperationsReader).
+ * Chaque mode doit etre lance dans sa propre JVM pour que le pic de memoire ait un sens.
+ *
+ * Usage : OperationsReaderBenchmark load|stream operations_file
+ * **/
+public class OperationsReaderBenchmark {
+
+    private static final int TASK_SIZE = 8;
+
+    public static void main(String[] args) throws IOException
+    {
+        String mode = args[0];
+        File operationsFile = new File(args[1]);
+
+        long start = System.nanoTime();
+        long firstTaskTime = 0;
+        long nbOperations = 0;
+        long checksum = 0;
+
+        if(mode.equals("load"))
+        {
+            ArrayList<String> allOperations = new ArrayList<>();
+            try (BufferedReader in = new BufferedReader(new FileReader(operationsFile)))
+            {
+                String readedOperation;
+                while ((readedOperation = in.readLine()) != null)
+                {
+                    allOperations.add(readedOperation);
+                }
+            }
+            PackedTask operations = PackedTask.parse(allOperations);
+            for(int i = 0; i < operations.size(); i += TASK_SIZE)
+            {
+                PackedTask task = operations.slice(i, Math.min(operations.size(), i + TASK_SIZE));
+                if(firstTaskTime == 0)
+                {
+                    firstTaskTime = System.nanoTime();
+                }
+                nbOperations += task.size();
+                checksum += task.getOperands()[0];
+            }
+        }
+        else
+        {
+            try (OperationsReader operationsReader = new OperationsReader(operationsFile))
+            {
+                while(operationsReader.hasNext())
+                {
+                    PackedTask task = operationsReader.next(TASK_SIZE);
+                    if(firstTaskTime == 0)
+                    {
+                        firstTaskTime = System.nanoTime();
+                    }
+                    nbOperations += task.size();
+                    checksum += task.size() > 0 ? task.getOperands()[0] : 0;
+                }
+            }
+        }
+        long end = System.nanoTime();
+
+        long peakHeapBytes = 0;
+        for(MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if(memoryPool.getType() == MemoryType.HEAP)
+            {
+                peakHeapBytes += memoryPool.getPeakUsage().getUsed();
+            }
+        }
+
+        System.out.println(String.format("%s: %d operations (checksum %d), first task after %.1f ms, all tasks after %.1f s, peak heap %d MB",
+                mode, nbOperations, checksum, (firstTaskTime - start) / 1E6, (end - start) / 1E9, peakHeapBytes / (1024 * 1024)));
+    }
+}
@@ -0,0 +1,184 @@
+package benchmark;
+
+import service.AuthenticationService;
+import shared.OperationServerSharedInfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Debit du service d'authentification appele directement (sans RMI) par de nombreux threads,
+ * comme les threads RMI d'un service charge : verification d'identite, battements de coeur et
+ * enregistrement de serveurs. Mesure aussi la taille envoyee pour la liste complete des serveurs
+ * et pour les changements depuis la version precedente.
+ * **/
+public class RegistryBenchmark {
+
+    private static final int[] NB_THREADS = { 1, 16, 256 };
+    private static final int NB_SERVERS = 256;
+    private static final int NB_LOAD_BALANCERS = 64;
+    private static final int CALLS_PER_ROUND = 200000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 10;
+    // The service logs every registration, which is not what is measured
+    private static final PrintStream NULL_OUT = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) { }
+    });
+
+    private interface Call
+    {
+        void run(int thread, int i) throws Exception;
+    }
+
+    public static void run(BenchmarkRunner runner) throws Exception
+    {
+        PrintStream out = System.out;
+        AuthenticationService service;
+        OperationServerSharedInfo[] serversInfos = new OperationServerSharedInfo[NB_SERVERS];
+        System.setOut(NULL_OUT);
+        try
+        {
+            service = new AuthenticationService();
+            for(int i = 0; i < NB_LOAD_BALANCERS; i++)
+            {
+                service.registerLoadBalancer("user" + i, "password" + i);
+            }
+            for(int i = 0; i < NB_SERVERS; i++)
+            {
+                serversInfos[i] = new OperationServerSharedInfo("10.0." + (i / 250) + "." + (i % 250), "5002", 4);
+                service.registerOperationServer(serversInfos[i]);
+            }
+        }
+        finally
+        {
+            System.setOut(out);
+        }
+
+        for(int nbThreads : NB_THREADS)
+        {
+            String param = "threads=" + nbThreads;
+            measure(runner, "registry.verifyIdentity", param, nbThreads,
+                    (thread, i) -> service.verifyLoadBalancerIdentity("user" + (i % NB_LOAD_BALANCERS), "password" + (i % NB_LOAD_BALANCERS)));
+            measure(runner, "registry.heartbeat", param, nbThreads,
+                    (thread, i) -> service.heartbeat(serversInfos[i % NB_SERVERS]));
+            // One call in 100 makes a server leave and join again, the others read the changes like a load balancer
+            long[] knownVersions = new long[nbThreads];
+            measure(runner, "registry.registerAndRead", param, nbThreads, (thread, i) ->
+            {
+                if(i % 100 == 0)
+                {
+                    service.unregisterOperationServer(serversInfos[thread % NB_SERVERS]);
+                    service.registerOperationServer(serversInfos[thread % NB_SERVERS]);
+                }
+                else
+                {
+                    knownVersions[thread] = service.getMembershipChanges(knownVersions[thread]).getVersion();
+                }
+            });
+        }
+
+        long version = service.getMembershipChanges(-1).getVersion();
+        runner.record("registry.serializedSize", "fullList", serializedSize(service.getAvailableServersInfo()), 0, "bytes");
+        System.setOut(NULL_OUT);
+        try
+        {
+            service.unregisterOperationServer(serversInfos[0]);
+            service.registerOperationServer(serversInfos[0]);
+        }
+        finally
+        {
+            System.setOut(out);
+        }
+        runner.record("registry.serializedSize", "changesSinceVersion", serializedSize(service.getMembershipChanges(version)), 0, "bytes");
+    }
+
+    // Mean time per call in nanoseconds, the calls of a round being shared between the threads
+    private static void measure(BenchmarkRunner runner, String benchmark, String param, int nbThreads, Call call) throws Exception
+    {
+        PrintStream out = System.out;
+        System.setOut(NULL_OUT);
+        double[] scores = new double[MEASURED_ROUNDS];
+        try
+        {
+            for(int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++)
+            {
+                long elapsed = runRound(nbThreads, call);
+                if(round >= WARMUP_ROUNDS)
+                {
+                    scores[round - WARMUP_ROUNDS] = elapsed / (double) CALLS_PER_ROUND;
+                }
+            }
+        }
+        finally
+        {
+            System.setOut(out);
+        }
+
+        double mean = 0;
+        for(double score : scores)
+        {
+            mean += score / scores.length;
+        }
+        double variance = 0;
+        for(double score : scores)
+        {
+            variance += (score - mean) * (score - mean) / (scores.length - 1);
+        }
+        runner.record(benchmark, param, mean, Math.sqrt(variance), "ns");
+    }
+
+    private static long runRound(int nbThreads, Call call) throws Exception
+    {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[nbThreads];
+        Exception[] failure = new Exception[1];
+        for(int t = 0; t < nbThreads; t++)
+        {
+            final int thread = t;
+            threads[t] = new Thread(() ->
+            {
+                try
+                {
+                    start.await();
+                    for(int i = thread; i < CALLS_PER_ROUND; i += nbThreads)
+                    {
+                        call.run(thread, i);
+                    }
+                }
+                catch (Exception e)
+                {
+                    failure[0] = e;
+                }
+            });
+            threads[t].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for(Thread thread : threads)
+        {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        if(failure[0] != null)
+        {
+            throw failure[0];
+        }
+        return elapsed;
+    }
+
+    private static int serializedSize(Serializable object) throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(object);
+        }
+        return bytes.size();
+    }
+}
@@ -0,0 +1,66 @@
+package benchmark;
+
+import shared.PackedTask;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compare l'ancien encodage des taches (ArrayList<String> serialisee) au PackedTask :
+ * taille serialisee, puis cout cote serveur pour deserialiser et analyser une tache.
+ * **/
+public class TaskEncodingBenchmark {
+
+    private static final int[] TASK_SIZES = { 8, 100, 2000 };
+
+    public static void run(BenchmarkRunner runner) throws Exception
+    {
+        List<String> allOperations = Files.readAllLines(Paths.get("operations", "operations-1"));
+
+        for(int taskSize : TASK_SIZES)
+        {
+            ArrayList<String> legacyTask = new ArrayList<>(allOperations.subList(0, taskSize));
+            PackedTask packedTask = PackedTask.parse(legacyTask);
+
+            byte[] legacyBytes = serialize(legacyTask);
+            byte[] packedBytes = serialize(packedTask);
+            String param = "size=" + taskSize;
+            runner.record("taskEncoding.legacy.serializedSize", param, legacyBytes.length, 0, "bytes");
+            runner.record("taskEncoding.packed.serializedSize", param, packedBytes.length, 0, "bytes");
+
+            // What the server does before calculating: deserialize, then parse the strings if needed
+            runner.measure("taskEncoding.legacy.deserializeAndParse", param, "us",
+                    () -> PackedTask.parse(deserializeLegacyTask(legacyBytes)).size());
+            runner.measure("taskEncoding.packed.deserialize", param, "us",
+                    () -> ((PackedTask) deserialize(packedBytes)).size());
+        }
+    }
+
+    private static byte[] serialize(Object object) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    // The legacy task is serialized by this benchmark, it is always an ArrayList<String>
+    @SuppressWarnings("unchecked")
+    private static ArrayList<String> deserializeLegacyTask(byte[] bytes) throws IOException, ClassNotFoundException
+    {
+        return (ArrayList<String>) deserialize(bytes);
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException
+    {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes)))
+        {
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package loadbalancer;
+
+import benchmark.BenchmarkRunner;
+import service.AuthenticationService;
+import shared.OperationServerInterface;
+import shared.OperationServerSharedInfo;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+/**
+ * Temps d'un travail complet sur operations-1 avec des serveurs en memoire (StubOperationServer).
+ * Les serveurs calculent avec le moteur rapide : le temps mesure est surtout celui de
+ * l'ordonnancement du repartiteur. Avec une latence simulee, compare l'envoi d'une seule
+ * tache a la fois par serveur (window=1) a une fenetre de plusieurs taches, et mesure la fin
+ * du travail avec un serveur tres lent, avec et sans copies des dernieres taches (hedging).
+ * Deux travaux soumis ensemble se partagent les serveurs selon leurs poids (JobScheduler).
+ * Compare le rejet aleatoire des grosses taches a la file bornee d'AdmissionControl.
+ * Enfin, avec des serveurs qui simulent le moteur de reference, compare les taches formees par
+ * nombre d'operations a celles formees par cout estime (CostModel) : duree du travail et ecart
+ * entre le premier et le dernier serveur a finir, sans copies des dernieres taches.
+ * En mode non-securise avec un serveur malicieux, compare la reverification des taches entieres
+ * a celle des seules operations en desaccord (resultats par operation), puis les votes de deux
+ * serveurs par tache (replica) a la verification des resultats par le repartiteur (spot, full).
+ * **/
+public class SchedulerBenchmark {
+
+    private static final String OPERATIONS_FILENAME = "operations-1";
+    private static final int EXPECTED_RESULT = 3336172;
+    private static final int CAPACITY = 4;
+    private static final int ITERATIONS = 10;
+    private static final int MAX_IN_FLIGHT_TASKS = 4;
+    private static final long LATENCY_MILLIS = 2;
+    private static final long STRAGGLER_LATENCY_MILLIS = 200;
+    private static final double SIMULATED_SPEEDUP = 20; // the whole job takes about 7 s on one reference server
+    // The load balancer prints its progress, which is not what is measured
+    private static final PrintStream NULL_OUT = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) { }
+    });
+
+    public static void run(BenchmarkRunner runner) throws Exception
+    {
+        runner.measureOnce("scheduler.secure", "servers=2", ITERATIONS, () -> runJob(true, MAX_IN_FLIGHT_TASKS, true, new long[2], new int[2]).getTotalResult());
+        runner.measureOnce("scheduler.secure", "servers=2,checkpoint=true", ITERATIONS,
+                () -> runJob(true, MAX_IN_FLIGHT_TASKS, true, true, new long[2], new int[2]).getTotalResult());
+        runner.measureOnce("scheduler.secure", "servers=4", ITERATIONS, () -> runJob(true, MAX_IN_FLIGHT_TASKS, true, new long[4], new int[4]).getTotalResult());
+        runner.measureOnce("scheduler.insecure", "servers=3", ITERATIONS, () -> runJob(false, MAX_IN_FLIGHT_TASKS, true, new long[3], new int[3]).getTotalResult());
+        runner.measureOnce("scheduler.insecure", "servers=3,malicious=50", ITERATIONS, () -> runJob(false, MAX_IN_FLIGHT_TASKS, true, new long[3], new int[] { 0, 0, 50 }).getTotalResult());
+        for(int maxInFlightTasks : new int[] { 1, MAX_IN_FLIGHT_TASKS })
+        {
+            String param = "servers=2,latency=" + LATENCY_MILLIS + "ms,window=" + maxInFlightTasks;
+            long[] latencies = { LATENCY_MILLIS, LATENCY_MILLIS };
+            runner.measureOnce("scheduler.secure", param, ITERATIONS, () -> runJob(true, maxInFlightTasks, true, latencies, new int[2]).getTotalResult());
+        }
+
+        // One server answers STRAGGLER_LATENCY_MILLIS later than the others: time after the last task sent
+        long[] latencies = { 0, 0, STRAGGLER_LATENCY_MILLIS };
+        for(boolean hedging : new boolean[] { false, true })
+        {
+            double[] tails = new double[ITERATIONS];
+            for(int i = 0; i < ITERATIONS; i++)
+            {
+                tails[i] = runJob(true, 1, hedging, latencies, new int[3]).getTailNanos() / 1E6;
+            }
+            recordMean(runner, "scheduler.secure.tail", "servers=3,straggler=" + STRAGGLER_LATENCY_MILLIS + "ms,hedging=" + hedging, tails, "ms");
+        }
+
+        // Two copies of the job submitted together: time until each result
+        for(int[] weights : new int[][] { { 1, 1 }, { 1, 3 } })
+        {
+            double[][] elapsed = new double[weights.length][ITERATIONS];
+            for(int i = 0; i < ITERATIONS; i++)
+            {
+                Job[] jobs = runJobs(weights, 2, LATENCY_MILLIS);
+                for(int j = 0; j < jobs.length; j++)
+                {
+                    elapsed[j][i] = jobs[j].getElapsedNanos() / 1E6;
+                }
+            }
+            for(int j = 0; j < weights.length; j++)
+            {
+                recordMean(runner, "scheduler.secure.jobs", "servers=2,latency=" + LATENCY_MILLIS + "ms,weights="
+                        + weights[0] + ":" + weights[1] + ",job=" + j, elapsed[j], "ms");
+            }
+        }
+
+        // Legacy random rejection against the bounded queue of the servers: job time and rejected tasks
+        for(boolean admissionControl : new boolean[] { false, true })
+        {
+            String param = "servers=2,latency=" + LATENCY_MILLIS + "ms,admission=" + (admissionControl ? "queue" : "legacy");
+            double[] times = new double[ITERATIONS];
+            double[] rejections = new double[ITERATIONS];
+            for(int i = 0; i < ITERATIONS; i++)
+            {
+                StubOperationServer[] stubs = { new StubOperationServer(CAPACITY, 0, LATENCY_MILLIS, admissionControl),
+                        new StubOperationServer(CAPACITY, 0, LATENCY_MILLIS, admissionControl) };
+                long start = System.nanoTime();
+                runJob(true, MAX_IN_FLIGHT_TASKS, true, false, true, true, ResultVerifier.Mode.FULL, stubs);
+                times[i] = (System.nanoTime() - start) / 1E6;
+                rejections[i] = stubs[0].getNbRejected() + stubs[1].getNbRejected();
+            }
+            recordMean(runner, "scheduler.secure.admission.time", param, times, "ms");
+            recordMean(runner, "scheduler.secure.admission.rejected", param, rejections, "tasks");
+        }
+
+        // Tasks formed by number of operations or by estimated cost, on servers as slow as the reference engine
+        for(boolean costBasedTasks : new boolean[] { false, true })
+        {
+            String param = "servers=3,engine=reference/" + (int) SIMULATED_SPEEDUP + ",costBasedTasks=" + costBasedTasks;
+            double[] makespans = new double[ITERATIONS];
+            double[] spreads = new double[ITERATIONS];
+            for(int i = 0; i < ITERATIONS; i++)
+            {
+                StubOperationServer[] stubs = new StubOperationServer[3];
+                for(int j = 0; j < stubs.length; j++)
+                {
+                    stubs[j] = new StubOperationServer(CAPACITY, 0, LATENCY_MILLIS, true);
+                    stubs[j].simulateReferenceEngine(SIMULATED_SPEEDUP);
+                }
+                long start = System.nanoTime();
+                runJob(true, MAX_IN_FLIGHT_TASKS, false, false, costBasedTasks, true, ResultVerifier.Mode.FULL, stubs);
+                makespans[i] = (System.nanoTime() - start) / 1E6;
+                long firstFinish = Long.MAX_VALUE;
+                long lastFinish = Long.MIN_VALUE;
+                for(StubOperationServer stub : stubs)
+                {
+                    firstFinish = Math.min(firstFinish, stub.getLastCompletionTime());
+                    lastFinish = Math.max(lastFinish, stub.getLastCompletionTime());
+                }
+                spreads[i] = (lastFinish - firstFinish) / 1E6;
+            }
+            recordMean(runner, "scheduler.secure.cost.makespan", param, makespans, "ms");
+            recordMean(runner, "scheduler.secure.cost.spread", param, spreads, "ms");
+        }
+
+        // Whole tasks or only the operations in disagreement sent to the tie-breakers, one server in two is wrong
+        for(boolean resultVectors : new boolean[] { false, true })
+        {
+            String param = "servers=3,malicious=50,resultVectors=" + resultVectors;
+            double[] times = new double[ITERATIONS];
+            double[] reverified = new double[ITERATIONS];
+            for(int i = 0; i < ITERATIONS; i++)
+            {
+                StubOperationServer[] stubs = { new StubOperationServer(CAPACITY, 0, LATENCY_MILLIS),
+                        new StubOperationServer(CAPACITY, 0, LATENCY_MILLIS), new StubOperationServer(CAPACITY, 50, LATENCY_MILLIS) };
+                long start = System.nanoTime();
+                LoadBalancer loadBalancer = runJob(false, MAX_IN_FLIGHT_TASKS, true, false, true, resultVectors, ResultVerifier.Mode.REPLICA, stubs);
+                times[i] = (System.nanoTime() - start) / 1E6;
+                reverified[i] = loadBalancer.getNbReverifiedOperations();
+            }
+            recordMean(runner, "scheduler.insecure.reverify.time", param, times, "ms");
+            recordMean(runner, "scheduler.insecure.reverify.operations", param, reverified, "operations");
+        }
+
+        // Two servers vote on each task, or one server calculates it and the balancer checks the results
+        for(ResultVerifier.Mode verification : ResultVerifier.Mode.values())
+        {
+            for(int maliciousResultRate : new int[] { 0, 50 })
+            {
+                String param = "servers=3,latency=" + LATENCY_MILLIS + "ms,malicious=" + maliciousResultRate
+                        + ",verification=" + verification.name().toLowerCase();
+                double[] times = new double[ITERATIONS];
+                for(int i = 0; i < ITERATIONS; i++)
+                {
+                    StubOperationServer[] stubs = { new StubOperationServer(CAPACITY, 0, LATENCY_MILLIS),
+                            new StubOperationServer(CAPACITY, 0, LATENCY_MILLIS), new StubOperationServer(CAPACITY, maliciousResultRate, LATENCY_MILLIS) };
+                    long start = System.nanoTime();
+                    runJob(false, MAX_IN_FLIGHT_TASKS, true, false, true, true, verification, stubs);
+                    times[i] = (System.nanoTime() - start) / 1E6;
+                }
+                recordMean(runner, "scheduler.insecure.verification", param, times, "ms");
+            }
+        }
+    }
+
+    private static void recordMean(BenchmarkRunner runner, String benchmark, String param, double[] samples, String unit)
+    {
+        double mean = 0;
+        for(double sample : samples)
+        {
+            mean += sample / samples.length;
+        }
+        double variance = 0;
+        for(double sample : samples)
+        {
+            variance += (sample - mean) * (sample - mean) / (samples.length - 1);
+        }
+        runner.record(benchmark, param, mean, Math.sqrt(variance), unit);
+    }
+
+    // Runs one copy of the job per weight at the same time, in secure mode
+    public static Job[] runJobs(int[] weights, int nbServers, long latencyMillis) throws Exception
+    {
+        ArrayList<OperationServerSharedInfo> serversInfos = new ArrayList<>();
+        ArrayList<OperationServerInterface> serverStubs = new ArrayList<>();
+        for(int i = 0; i < nbServers; i++)
+        {
+            serversInfos.add(new OperationServerSharedInfo("127.0.0.1", String.valueOf(5002 + i), CAPACITY));
+            serverStubs.add(new StubOperationServer(CAPACITY, 0, latencyMillis));
+        }
+
+        PrintStream out = System.out;
+        System.setOut(NULL_OUT);
+        try
+        {
+            LoadBalancer loadBalancer = new LoadBalancer("bench", "bench", new AuthenticationService(), serversInfos, serverStubs, MAX_IN_FLIGHT_TASKS);
+            JobScheduler jobScheduler = new JobScheduler(false);
+            Job[] jobs = new Job[weights.length];
+            for(int j = 0; j < weights.length; j++)
+            {
+                jobs[j] = new Job("job" + j, new File("operations", OPERATIONS_FILENAME), weights[j], null, null, null, false);
+                jobScheduler.submit(jobs[j]);
+            }
+            loadBalancer.runJobs(jobScheduler, true);
+            for(Job job : jobs)
+            {
+                if(job.getResult() != EXPECTED_RESULT)
+                {
+                    throw new IllegalStateException("Expected " + EXPECTED_RESULT + " but got " + job.getResult());
+                }
+            }
+            return jobs;
+        }
+        finally
+        {
+            System.setOut(out);
+        }
+    }
+
+    // Runs the whole job against one stub server per latency and malicious rate
+    public static LoadBalancer runJob(boolean secure, int maxInFlightTasks, boolean hedging, long[] latenciesMillis,
+                                      int[] maliciousResultRates) throws Exception
+    {
+        return runJob(secure, maxInFlightTasks, hedging, false, latenciesMillis, maliciousResultRates);
+    }
+
+    // Same, with the checkpoint journal written in the checkpoints directory and deleted at the end
+    public static LoadBalancer runJob(boolean secure, int maxInFlightTasks, boolean hedging, boolean checkpointing,
+                                      long[] latenciesMillis, int[] maliciousResultRates) throws Exception
+    {
+        StubOperationServer[] stubs = new StubOperationServer[maliciousResultRates.length];
+        for(int i = 0; i < stubs.length; i++)
+        {
+            stubs[i] = new StubOperationServer(CAPACITY, maliciousResultRates[i], latenciesMillis[i]);
+        }
+        return runJob(secure, maxInFlightTasks, hedging, checkpointing, true, true, ResultVerifier.Mode.FULL, stubs);
+    }
+
+    // Runs the whole job against the given stub servers
+    public static LoadBalancer runJob(boolean secure, int maxInFlightTasks, boolean hedging, boolean checkpointing,
+                                      boolean costBasedTasks, boolean resultVectors, ResultVerifier.Mode verification,
+                                      StubOperationServer[] stubs) throws Exception
+    {
+        ArrayList<OperationServerSharedInfo> serversInfos = new ArrayList<>();
+        ArrayList<OperationServerInterface> serverStubs = new ArrayList<>();
+        for(int i = 0; i < stubs.length; i++)
+        {
+            serversInfos.add(new OperationServerSharedInfo("127.0.0.1", String.valueOf(5002 + i), CAPACITY));
+            serverStubs.add(stubs[i]);
+        }
+
+        PrintStream out = System.out;
+        System.setOut(NULL_OUT);
+        try
+        {
+            LoadBalancer loadBalancer = new LoadBalancer("bench", "bench", new AuthenticationService(), serversInfos, serverStubs, maxInFlightTasks);
+            loadBalancer.setHedging(hedging);
+            loadBalancer.setCheckpointing(checkpointing);
+            loadBalancer.setCostBasedTasks(costBasedTasks);
+            loadBalancer.setResultVectors(resultVectors);
+            loadBalancer.setVerification(verification);
+            loadBalancer.run(OPERATIONS_FILENAME, secure);
+            if(loadBalancer.getTotalResult() != EXPECTED_RESULT)
+            {
+                throw new IllegalStateException("Expected " + EXPECTED_RESULT + " but got " + loadBalancer.getTotalResult());
+            }
+            return loadBalancer;
+        }
+        finally
+        {
+            System.setOut(out);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package loadbalancer;
+
+import service.AuthenticationService;
+import shared.OperationServerInterface;
+import shared.OperationServerSharedInfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Verifications du repartiteur avec des serveurs en memoire (StubOperationServer) : chaque
+ * verification lance un travail complet et echoue si le resultat est faux ou si le travail ne
+ * finit pas a temps. La commande echoue des qu'une verification echoue.
+ *
+ * Lancer avec 'ant check' dans le repertoire TP2.
+ * **/
+public class SchedulerChecks {
+
+    private static final int CAPACITY = 4;
+    private static final long LATENCY_MILLIS = 2;
+    private static final long BUSY_WAIT_MILLIS = 50;
+    private static final long TIMEOUT_MILLIS = 10000;
+    // A job set aside for BUSY_WAIT_MILLIS must not wait for the membership poll (1 s) or forever
+    private static final long MAX_REJECTED_JOB_MILLIS = 800;
+
+    private interface Check {
+        void run() throws Exception;
+    }
+
+    public static void main(String[] args)
+    {
+        int nbFailures = 0;
+        nbFailures += check("every server rejects its first task, secure", () -> runRejectedJob(true, ResultVerifier.Mode.FULL, 2));
+        nbFailures += check("every server rejects its first task, verified results", () -> runRejectedJob(false, ResultVerifier.Mode.FULL, 2));
+        nbFailures += check("every server rejects its first task, replica", () -> runRejectedJob(false, ResultVerifier.Mode.REPLICA, 3));
+        nbFailures += check("negative pell operand, secure", () -> runNegativePellJob(true, ResultVerifier.Mode.FULL));
+        nbFailures += check("negative pell operand, verified results", () -> runNegativePellJob(false, ResultVerifier.Mode.FULL));
+        nbFailures += check("negative pell operand, replica", () -> runNegativePellJob(false, ResultVerifier.Mode.REPLICA));
+        nbFailures += check("journal line overlapping completed tasks", SchedulerChecks::loadOverlappingJournal);
+        if(nbFailures > 0)
+        {
+            System.err.println(nbFailures + " checks failed.");
+            System.exit(1);
+        }
+        System.out.println("All checks passed.");
+        System.exit(0);
+    }
+
+    // Runs the check in a daemon thread, returns 1 if it failed or did not finish in TIMEOUT_MILLIS
+    private static int check(String name, Check check)
+    {
+        Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(() -> {
+            try
+            {
+                check.run();
+            }
+            catch (Throwable e)
+            {
+                failure[0] = e;
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+        try
+        {
+            thread.join(TIMEOUT_MILLIS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if(thread.isAlive())
+        {
+            System.err.println("FAILED " + name + ": not done after " + TIMEOUT_MILLIS + " ms.");
+            return 1;
+        }
+        if(failure[0] != null)
+        {
+            System.err.println("FAILED " + name + ": " + failure[0]);
+            return 1;
+        }
+        System.out.println("OK " + name);
+        return 0;
+    }
+
+    // Every server is busy for its first task: the balancer sets them all aside with nothing in flight
+    private static void runRejectedJob(boolean secure, ResultVerifier.Mode verification, int nbServers) throws Exception
+    {
+        StubOperationServer[] stubs = new StubOperationServer[nbServers];
+        for(int i = 0; i < stubs.length; i++)
+        {
+            stubs[i] = new StubOperationServer(CAPACITY, 0, LATENCY_MILLIS, true);
+            stubs[i].rejectNextTasks(1, BUSY_WAIT_MILLIS);
+        }
+        long start = System.nanoTime();
+        SchedulerBenchmark.runJob(secure, 1, false, false, true, true, verification, stubs);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        for(StubOperationServer stub : stubs)
+        {
+            if(stub.getNbRejected() < 1)
+            {
+                throw new IllegalStateException("A server did not reject its first task.");
+            }
+        }
+        if(elapsedMillis > MAX_REJECTED_JOB_MILLIS)
+        {
+            throw new IllegalStateException("Job done in " + elapsedMillis + " ms, the servers were set aside for " + BUSY_WAIT_MILLIS + " ms.");
+        }
+    }
+
+    // pell of a negative operand never terminates: the file is refused when read, the job fails without a result
+    private static void runNegativePellJob(boolean secure, ResultVerifier.Mode verification) throws Exception
+    {
+        File operationsFile = File.createTempFile("negative-pell-", "", new File("operations"));
+        File jobsDirectory = Files.createTempDirectory("negative-pell-jobs-").toFile();
+        String name = operationsFile.getName();
+        File runningFile = new File(jobsDirectory, name + ".running");
+        File resultFile = new File(jobsDirectory, name + ".result");
+        File failedFile = new File(jobsDirectory, name + ".failed");
+        try
+        {
+            Files.write(operationsFile.toPath(), Arrays.asList("pell 3", "prime 17", "pell -2"));
+            try (OperationsReader operationsReader = new OperationsReader(operationsFile))
+            {
+                operationsReader.next(8);
+                throw new IllegalStateException("The negative pell operand was read.");
+            }
+            catch (IOException e)
+            {
+                // Expected
+            }
+
+            // Job of the watched directory: its .running file is renamed .failed
+            Files.write(runningFile.toPath(), Arrays.asList("operations=" + name));
+            JobScheduler jobs = new JobScheduler(false);
+            jobs.submit(new Job(name, operationsFile, 1, runningFile, resultFile, failedFile, false));
+            LoadBalancer loadBalancer = newLoadBalancer(verification);
+            String output = captureOutput(() -> loadBalancer.runJobs(jobs, secure));
+            if(!failedFile.exists() || runningFile.exists() || resultFile.exists())
+            {
+                throw new IllegalStateException("Job files after the failure: " + Arrays.toString(jobsDirectory.list()) + ".");
+            }
+            if(jobs.getLastFinishedJob() != null || output.contains(": resultat "))
+            {
+                throw new IllegalStateException("A result was reported for the failed job: " + output);
+            }
+
+            // Job given on the command line: no final result is printed
+            LoadBalancer commandLineBalancer = newLoadBalancer(verification);
+            output = captureOutput(() -> commandLineBalancer.run(name, secure));
+            if(commandLineBalancer.getTotalResult() != 0 || output.contains("Resultat final"))
+            {
+                throw new IllegalStateException("A result was printed for the failed job: " + output);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(operationsFile.toPath());
+            for(File file : new File[] { runningFile, resultFile, failedFile, jobsDirectory })
+            {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    // Three stub servers, with the given verification in non-secure mode
+    private static LoadBalancer newLoadBalancer(ResultVerifier.Mode verification) throws Exception
+    {
+        ArrayList<OperationServerSharedInfo> serversInfos = new ArrayList<>();
+        ArrayList<OperationServerInterface> serverStubs = new ArrayList<>();
+        for(int i = 0; i < 3; i++)
+        {
+            serversInfos.add(new OperationServerSharedInfo("127.0.0.1", String.valueOf(5002 + i), CAPACITY));
+            serverStubs.add(new StubOperationServer(CAPACITY, 0, LATENCY_MILLIS, true));
+        }
+        LoadBalancer loadBalancer = new LoadBalancer("check", "check", new AuthenticationService(), serversInfos, serverStubs, 1);
+        loadBalancer.setVerification(verification);
+        return loadBalancer;
+    }
+
+    // Returns what the job printed on the standard output
+    private static String captureOutput(Runnable job)
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(output, true));
+        try
+        {
+            job.run();
+        }
+        finally
+        {
+            System.setOut(out);
+        }
+        return output.toString();
+    }
+
+    // A line overlapping lines already read is ignored: neither its operations nor its sum are resumed
+    private static void loadOverlappingJournal() throws Exception
+    {
+        File operationsFile = File.createTempFile("journal-", "");
+        File journalFile = File.createTempFile("journal-", ".journal");
+        try
+        {
+            byte[] operations = "pell 3\nprime 17\npell 5\nprime 4\n".getBytes("US-ASCII");
+            Files.write(operationsFile.toPath(), operations);
+            CRC32 crc = new CRC32();
+            crc.update(operations);
+            Files.write(journalFile.toPath(), Arrays.asList("operations " + operations.length + " " + crc.getValue(),
+                    "0 2 100", "1 2 200", "0 2 100", "3 1 400"));
+            try (CheckpointJournal journal = new CheckpointJournal(operationsFile, journalFile))
+            {
+                if(journal.getNbResumedOperations() != 3 || journal.getResumedResult() != 500)
+                {
+                    throw new IllegalStateException("Resumed " + journal.getNbResumedOperations() + " operations and "
+                            + journal.getResumedResult() + " instead of 3 operations and 500.");
+                }
+                if(!journal.getCompletedRanges().toString().equals("{0=2, 3=4}"))
+                {
+                    throw new IllegalStateException("Completed ranges " + journal.getCompletedRanges() + ".");
+                }
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(operationsFile.toPath());
+            Files.deleteIfExists(journalFile.toPath());
+        }
+    }
+}
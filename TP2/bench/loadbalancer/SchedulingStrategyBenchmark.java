@@ -0,0 +1,117 @@
+package loadbalancer;
+
+import benchmark.BenchmarkRunner;
+import service.AuthenticationService;
+import shared.FastOperations;
+import shared.OperationServerInterface;
+import shared.OperationServerSharedInfo;
+import shared.PackedTask;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compare les strategies d'ordonnancement (SchedulingStrategy) en mode securise sur les fichiers
+ * d'operations fournis : operations-1, puis les cinq fichiers de 100 operations l'un apres l'autre.
+ * Trois serveurs qui simulent le moteur de reference a des vitesses differentes. Dans la grappe
+ * "matched", la capacite annoncee suit la vitesse (2, 4, 8) ; dans la grappe "mismatched", le
+ * serveur qui annonce la plus grande capacite est le plus lent. Mesure la duree des travaux.
+ * **/
+public class SchedulingStrategyBenchmark {
+
+    private static final String LARGE_FILENAME = "operations-1";
+    private static final String[] SMALL_FILENAMES = { "operations-1481", "operations-1949", "operations-2809", "operations-3216", "operations-588" };
+    private static final int ITERATIONS = 5;
+    private static final int MAX_IN_FLIGHT_TASKS = 4;
+    private static final long LATENCY_MILLIS = 2;
+    private static final double[] SPEEDUPS = { 10, 20, 40 }; // the whole of operations-1 takes about 7 s on one reference server
+    private static final int[] MATCHED_CAPACITIES = { 2, 4, 8 };
+    private static final int[] MISMATCHED_CAPACITIES = { 8, 4, 2 };
+    private static final PrintStream NULL_OUT = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) { }
+    });
+
+    public static void run(BenchmarkRunner runner) throws Exception
+    {
+        String[][] files = { { LARGE_FILENAME }, SMALL_FILENAMES };
+        for(String cluster : new String[] { "matched", "mismatched" })
+        {
+            int[] capacities = cluster.equals("matched") ? MATCHED_CAPACITIES : MISMATCHED_CAPACITIES;
+            for(String name : SchedulingStrategy.NAMES)
+            {
+                for(String[] filenames : files)
+                {
+                    String param = "cluster=" + cluster + ",files=" + (filenames.length == 1 ? filenames[0] : "5x100ops")
+                            + ",strategy=" + name;
+                    runner.measureOnce("scheduler.strategy", param, ITERATIONS, () -> {
+                        int total = 0;
+                        for(String filename : filenames)
+                        {
+                            total += runJob(SchedulingStrategy.forName(name), capacities, filename);
+                        }
+                        return total;
+                    });
+                }
+            }
+        }
+    }
+
+    // Runs the job of the file on one simulated reference server per capacity, returns its result
+    public static int runJob(SchedulingStrategy strategy, int[] capacities, String filename) throws Exception
+    {
+        ArrayList<OperationServerSharedInfo> serversInfos = new ArrayList<>();
+        ArrayList<OperationServerInterface> serverStubs = new ArrayList<>();
+        for(int i = 0; i < capacities.length; i++)
+        {
+            StubOperationServer stub = new StubOperationServer(capacities[i], 0, LATENCY_MILLIS, true);
+            stub.simulateReferenceEngine(SPEEDUPS[i]);
+            serversInfos.add(new OperationServerSharedInfo("127.0.0.1", String.valueOf(5002 + i), capacities[i]));
+            serverStubs.add(stub);
+        }
+
+        int expectedResult = getExpectedResult(filename);
+        PrintStream out = System.out;
+        System.setOut(NULL_OUT);
+        try
+        {
+            LoadBalancer loadBalancer = new LoadBalancer("bench", "bench", new AuthenticationService(), serversInfos, serverStubs, MAX_IN_FLIGHT_TASKS);
+            loadBalancer.setSchedulingStrategy(strategy);
+            loadBalancer.run(filename, true);
+            if(loadBalancer.getTotalResult() != expectedResult)
+            {
+                throw new IllegalStateException("Expected " + expectedResult + " but got " + loadBalancer.getTotalResult() + " for " + filename);
+            }
+            return loadBalancer.getTotalResult();
+        }
+        finally
+        {
+            System.setOut(out);
+        }
+    }
+
+    // Sum of the results of the file, calculated locally
+    private static int getExpectedResult(String filename) throws Exception
+    {
+        List<String> lines = new ArrayList<>();
+        for(String line : Files.readAllLines(new File("operations", filename).toPath()))
+        {
+            if(!line.trim().isEmpty())
+            {
+                lines.add(line);
+            }
+        }
+        PackedTask task = PackedTask.parse(lines);
+        int result = 0;
+        for(int i = 0; i < task.size(); i++)
+        {
+            int operand = task.getOperands()[i];
+            result += (task.getOpcodes()[i] == PackedTask.OP_PELL ? FastOperations.pell(operand) : FastOperations.prime(operand)) % 4000;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,273 @@
+package loadbalancer;
+
+import operationserver.AdmissionControl;
+import operationserver.OperationEngine;
+import operationserver.ResultCache;
+import operationserver.TaskCalculator;
+import shared.FalseIdentityException;
+import shared.OperationServerInterface;
+import shared.PackedTask;
+import shared.TaskRejectedException;
+
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serveur de calcul en memoire pour les benchmarks du repartiteur : meme regle de rejet et
+ * meme taux de resultats malicieux qu'OperationServer, sans RMI ni authentification.
+ * latencyMillis simule l'aller-retour reseau : la moitie avant le calcul, la moitie apres.
+ * Avec admissionControl, les taches passent par la file bornee d'AdmissionControl, sans rejet aleatoire.
+ * Avec rejectNextTasks, les premieres taches sont refusees comme par une file pleine, avec une attente estimee.
+ * Avec simulateReferenceEngine, le serveur calcule une tache a la fois et dort le temps que le moteur
+ * de reference aurait mis (appels recursifs de pell, iterations de isPrime), divise par un facteur :
+ * plusieurs serveurs lents sur une machine a 1 coeur.
+ * **/
+public class StubOperationServer implements OperationServerInterface {
+
+    private final int capacity;
+    private final int maliciousResultRate;
+    private final long latencyMillis;
+    private final TaskCalculator taskCalculator = new TaskCalculator(OperationEngine.FAST, new ResultCache(0), 1);
+    private final AdmissionControl admissionControl; // null: legacy random rejection
+    private final AtomicInteger nbRejected = new AtomicInteger(0);
+    private final AtomicInteger nbForcedRejections = new AtomicInteger(0);
+    private volatile long forcedWaitMillis = 0;
+    private final ReentrantLock core = new ReentrantLock(true);
+    private double simulatedNanosPerUnit = 0; // 0: the fast engine, without simulated time
+    private volatile long lastCompletionTime = 0; // System.nanoTime() of the last task calculated
+    private static final double REFERENCE_NANOS_PER_UNIT = 2.4; // Operations timed on one core
+    private static long[] primeIterations = new long[0]; // loop iterations of Operations.prime(x), by x
+
+    public StubOperationServer(int capacity, int maliciousResultRate, long latencyMillis)
+    {
+        this(capacity, maliciousResultRate, latencyMillis, false);
+    }
+
+    public StubOperationServer(int capacity, int maliciousResultRate, long latencyMillis, boolean admissionControl)
+    {
+        this.capacity = capacity;
+        this.maliciousResultRate = maliciousResultRate;
+        this.latencyMillis = latencyMillis;
+        this.admissionControl = admissionControl ? new AdmissionControl(capacity, 1) : null;
+    }
+
+    public int getNbRejected()
+    {
+        return nbRejected.get();
+    }
+
+    public long getLastCompletionTime()
+    {
+        return lastCompletionTime;
+    }
+
+    // The next nbTasks tasks are rejected as if the queue was full, with estimatedWaitMillis as the hint
+    public void rejectNextTasks(int nbTasks, long estimatedWaitMillis)
+    {
+        this.forcedWaitMillis = estimatedWaitMillis;
+        this.nbForcedRejections.set(nbTasks);
+    }
+
+    // Simulates the reference engine on a machine speedup times faster
+    public void simulateReferenceEngine(double speedup)
+    {
+        this.simulatedNanosPerUnit = REFERENCE_NANOS_PER_UNIT / speedup;
+    }
+
+    @Override
+    public int calculateResult(String loadBalancerUser, String loadBalancerPassword, ArrayList<String> operationsList) throws TaskRejectedException
+    {
+        return calculate(PackedTask.parse(operationsList), null);
+    }
+
+    @Override
+    public int calculatePackedResult(String loadBalancerUser, String loadBalancerPassword, PackedTask task) throws TaskRejectedException
+    {
+        return calculate(task, null);
+    }
+
+    @Override
+    public int calculatePackedResult(String sessionToken, PackedTask task) throws TaskRejectedException, FalseIdentityException
+    {
+        return calculate(task, null);
+    }
+
+    @Override
+    public int[] calculatePackedResults(String sessionToken, PackedTask task) throws TaskRejectedException, FalseIdentityException
+    {
+        int[] results = new int[task.size()];
+        calculate(task, results);
+        return results;
+    }
+
+    @Override
+    public void ping()
+    {
+        sleep(latencyMillis);
+    }
+
+    // Returns the sum of the results, also written in results when it is not null
+    private int calculate(PackedTask task, int[] results) throws TaskRejectedException
+    {
+        sleep(latencyMillis / 2);
+        try
+        {
+            return calculateNow(task, results);
+        }
+        finally
+        {
+            sleep(latencyMillis - latencyMillis / 2);
+        }
+    }
+
+    private int calculateNow(PackedTask task, int[] results) throws TaskRejectedException
+    {
+        if(nbForcedRejections.getAndUpdate(n -> Math.max(0, n - 1)) > 0)
+        {
+            nbRejected.incrementAndGet();
+            throw new TaskRejectedException(0, task.size(), forcedWaitMillis);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if(admissionControl == null && task.size() > capacity && (task.size() - capacity) / (4.0 * capacity) >= random.nextDouble())
+        {
+            nbRejected.incrementAndGet();
+            throw new TaskRejectedException();
+        }
+
+        int result = admissionControl == null ? calculateOnCore(task, results) : calculateAdmitted(task, results);
+        lastCompletionTime = System.nanoTime();
+        if(random.nextInt(100) < maliciousResultRate)
+        {
+            int error = random.nextInt(6) + 1;
+            if(results != null && results.length > 0)
+            {
+                results[random.nextInt(results.length)] += error;
+            }
+            return result + error;
+        }
+        return result;
+    }
+
+    private int calculateAdmitted(PackedTask task, int[] results) throws TaskRejectedException
+    {
+        try
+        {
+            admissionControl.admit(task.size());
+        }
+        catch (TaskRejectedException e)
+        {
+            nbRejected.incrementAndGet();
+            throw e;
+        }
+        try
+        {
+            admissionControl.awaitTurn();
+        }
+        catch (InterruptedException e)
+        {
+            admissionControl.cancel(task.size());
+            Thread.currentThread().interrupt();
+            throw new TaskRejectedException();
+        }
+        long start = System.nanoTime();
+        try
+        {
+            return calculateOnCore(task, results);
+        }
+        finally
+        {
+            admissionControl.release(task.size(), System.nanoTime() - start);
+        }
+    }
+
+    private int calculateOnCore(PackedTask task, int[] results)
+    {
+        if(simulatedNanosPerUnit == 0)
+        {
+            return taskCalculator.calculate(task, results);
+        }
+        core.lock();
+        try
+        {
+            long end = System.nanoTime() + Math.round(getReferenceUnits(task) * simulatedNanosPerUnit);
+            int result = taskCalculator.calculate(task, results);
+            for(long remaining = end - System.nanoTime(); remaining > 0; remaining = end - System.nanoTime())
+            {
+                LockSupport.parkNanos(remaining);
+            }
+            return result;
+        }
+        finally
+        {
+            core.unlock();
+        }
+    }
+
+    // Exact work of the reference engine: recursive calls of pell, loop iterations of prime and isPrime
+    private static double getReferenceUnits(PackedTask task)
+    {
+        double units = 0;
+        for(int i = 0; i < task.size(); i++)
+        {
+            int operand = task.getOperands()[i];
+            if(task.getOpcodes()[i] == PackedTask.OP_PELL)
+            {
+                units += CostModel.getUnits(PackedTask.OP_PELL, operand);
+            }
+            else if(operand > 0)
+            {
+                units += getPrimeIterations(operand);
+            }
+        }
+        return units;
+    }
+
+    private static synchronized long getPrimeIterations(int x)
+    {
+        if(x >= primeIterations.length)
+        {
+            // isPrime(i) stops at the smallest divisor of i, found with a sieve
+            int size = Math.max(x + 1, 2 * primeIterations.length);
+            int[] smallestDivisor = new int[size];
+            for(int i = 2; i < size; i++)
+            {
+                if(smallestDivisor[i] == 0)
+                {
+                    for(int multiple = i; multiple < size; multiple += i)
+                    {
+                        if(smallestDivisor[multiple] == 0)
+                        {
+                            smallestDivisor[multiple] = i;
+                        }
+                    }
+                }
+            }
+            primeIterations = new long[size];
+            for(int i = 1; i < size; i++)
+            {
+                long isPrimeIterations = i < 2 ? 0 : smallestDivisor[i] == i ? i - 2 : smallestDivisor[i] - 1;
+                primeIterations[i] = primeIterations[i - 1] + 1 + isPrimeIterations;
+            }
+        }
+        return primeIterations[x];
+    }
+
+    private static void sleep(long millis)
+    {
+        if(millis == 0)
+        {
+            return;
+        }
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
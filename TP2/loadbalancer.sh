@@ -6,10 +6,14 @@ popd > /dev/null
 
 cat << EndOfMessage
 HELP: 
-./loadbalancer.sh username password operations_filename
+./loadbalancer.sh username password operations_filename|--jobs=directory [--<propriete>=<valeur>]
 	- username: (REQUIRED) Nom d'utilisateur
 	- password: (REQUIRED) Mot de passe
 	- operations_filename: (REQUIRED) Nom du fichier d'operations.
+	- --jobs: Au lieu d'un fichier, calcule les travaux <nom>.job deposes dans le repertoire
+	  (operations=<fichier>, weight=<poids>) ; le resultat est ecrit dans <nom>.result.
+	- --<propriete>: (OPTIONAL) Remplace une propriete d'application.properties (ex. --maxInFlightTasks=2).
+	  Les reglages d'ordonnancement modifies dans application.properties s'appliquent sans redemarrer.
 
 EndOfMessage
 
@@ -6,11 +6,18 @@ popd > /dev/null
 
 cat << EndOfMessage
 HELP: 
-./operationserver.sh ip_address capacity malicious_result_rate
+./operationserver.sh ip_address port capacity malicious_result_rate [--engine=reference|fast] [--cache-mb=N] [--parallelism=N] [--capacity-per-core] [--metrics-port=N] [--admission=queue|legacy] [--<propriete>=<valeur>]
 	- ip_address: (REQUIRED) Addresse ip du serveur.
 	- port: (REQUIRED) Port du serveur.
 	- capacity: (REQUIRED) Nombre d'operations pour lequel la tache est garantie.
 	- malicious_result_rate: (REQUIRED) Taux de reponses erronees (0: toujours de bons resultats, 100: toujours de faux resultats)
+	- --engine: (OPTIONAL) Moteur de calcul. reference (defaut) ou fast (resultats identiques, beaucoup plus rapide)
+	- --cache-mb: (OPTIONAL) Memoire maximale du cache de resultats en Mo (defaut 4, 0 pour le desactiver)
+	- --parallelism: (OPTIONAL) Nombre de coeurs qui se partagent les operations d'une tache (defaut : tous les coeurs)
+	- --capacity-per-core: (OPTIONAL) La capacite annoncee devient capacity * parallelism
+	- --metrics-port: (OPTIONAL) Port local des metriques en texte (http://127.0.0.1:N/metrics), 0 (defaut) pour ne pas l'ouvrir
+	- --admission: (OPTIONAL) queue (defaut) : file bornee, refus immediat avec la place libre et l'attente estimee ; legacy : rejet aleatoire selon la taille
+	- --<propriete>: (OPTIONAL) Remplace une propriete d'application.properties (ex. --serviceIp=127.0.0.1)
 
 IPADDR=$1
 
@@ -0,0 +1,31 @@
+package loadbalancer;
+
+import java.util.ArrayList;
+
+/**
+ * Strategie d'origine : le serveur disponible de plus grande capacite, le premier en cas d'egalite.
+ * Les serveurs de plus petite capacite ne recoivent une tache que quand les plus grands sont pleins.
+ * **/
+public class BiggestCapacityStrategy implements SchedulingStrategy {
+
+    @Override
+    public int selectServer(ArrayList<ServerHandle> servers)
+    {
+        int biggest = -1;
+        for(int i = 0; i < servers.size(); i++)
+        {
+            if(servers.get(i).isAvailable()
+                    && (biggest == -1 || servers.get(i).getInfo().getCapacity() > servers.get(biggest).getInfo().getCapacity()))
+            {
+                biggest = i;
+            }
+        }
+        return biggest;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "biggest-capacity";
+    }
+}
@@ -0,0 +1,227 @@
+package loadbalancer;
+
+import shared.PackedTask;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Journal des taches terminees d'un fichier d'operations, pour reprendre un travail interrompu.
+ *
+ * Une ligne par tache acceptee : premiere operation, nombre d'operations et somme partielle.
+ * Chaque ligne est ecrite tout de suite (elle survit a l'arret du repartiteur), et un fil du journal
+ * la force sur le disque (fsync) au plus FORCE_INTERVAL_MILLIS plus tard, meme si aucune autre tache
+ * ne se termine. Au redemarrage avec le meme fichier, les intervalles deja calcules sont sautes et
+ * leurs sommes reprises. Une ligne qui recouvre en partie des intervalles deja lus est ignoree (journal
+ * corrompu) : ses operations pas encore couvertes sont calculees a nouveau. La premiere ligne identifie
+ * le fichier d'operations (taille et CRC du debut) ; un autre fichier recommence a zero.
+ * Le journal est supprime quand le travail se termine. Utilise par le fil du repartiteur, sauf force().
+ * **/
+public class CheckpointJournal implements Closeable {
+
+    private static final long FORCE_INTERVAL_MILLIS = 200;
+    private static final int IDENTITY_BYTES = 1024 * 1024; // bytes of the operations file in the CRC
+
+    private final File journalFile;
+    private final FileChannel channel;
+    private final NavigableMap<Long, Long> completedRanges = new TreeMap<>(); // first operation -> end (exclusive), merged
+    private final ScheduledExecutorService forceScheduler;
+    private long nbResumedOperations = 0;
+    private int resumedResult = 0;
+    private int nbOverlappingLines = 0;
+    private boolean forceNeeded = false;
+
+    /**
+     * Opens the journal of the operations file, reading the tasks completed by a previous run
+     * **/
+    public CheckpointJournal(File operationsFile, File journalFile) throws IOException
+    {
+        this.journalFile = journalFile;
+        String header = "operations " + operationsFile.length() + " " + getChecksum(operationsFile) + "\n";
+
+        long validLength = 0;
+        if(journalFile.exists())
+        {
+            validLength = load(header);
+            if(validLength == 0)
+            {
+                System.out.println("Journal " + journalFile + " ignored: it belongs to another operations file.");
+            }
+            if(nbOverlappingLines > 0)
+            {
+                System.err.println("Error: " + nbOverlappingLines + " lines of the journal " + journalFile
+                        + " overlap tasks already read, their operations are calculated again.");
+            }
+        }
+        else if(journalFile.getParentFile() != null)
+        {
+            Files.createDirectories(journalFile.getParentFile().toPath());
+        }
+
+        channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // Drops another file's journal, or the incomplete line written when the previous run stopped
+        channel.truncate(validLength);
+        channel.position(validLength);
+        if(validLength == 0)
+        {
+            write(header);
+            channel.force(false);
+        }
+
+        forceScheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "journal " + journalFile.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        forceScheduler.scheduleWithFixedDelay(() ->
+        {
+            try
+            {
+                force();
+            }
+            catch (IOException e)
+            {
+                System.err.println("Error: Could not force the journal " + journalFile + " to the disk. " + e.getMessage());
+            }
+        }, FORCE_INTERVAL_MILLIS, FORCE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public NavigableMap<Long, Long> getCompletedRanges() {
+        return completedRanges;
+    }
+
+    public long getNbResumedOperations() {
+        return nbResumedOperations;
+    }
+
+    public int getResumedResult() {
+        return resumedResult;
+    }
+
+    // Appends the result of the task, the file is forced to the disk at most FORCE_INTERVAL_MILLIS later
+    public synchronized void onTaskCompleted(PackedTask task, int result) throws IOException
+    {
+        write(task.getFirstOperation() + " " + task.size() + " " + result + "\n");
+        forceNeeded = true;
+    }
+
+    // The job is done, nothing is left to resume
+    public synchronized void delete() throws IOException
+    {
+        // shutdown, not shutdownNow: interrupting a force would close the channel
+        forceScheduler.shutdown();
+        channel.close();
+        Files.deleteIfExists(journalFile.toPath());
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        forceScheduler.shutdown();
+        if(channel.isOpen())
+        {
+            force();
+            channel.close();
+        }
+    }
+
+    // Called every FORCE_INTERVAL_MILLIS by the journal thread, and when the journal is closed
+    private synchronized void force() throws IOException
+    {
+        if(forceNeeded && channel.isOpen())
+        {
+            channel.force(false);
+            forceNeeded = false;
+        }
+    }
+
+    private void write(String line) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.US_ASCII));
+        while(buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+    }
+
+    // Reads the completed tasks and returns the length of the complete lines, or 0 if the header differs
+    private long load(String header) throws IOException
+    {
+        String content = new String(Files.readAllBytes(journalFile.toPath()), StandardCharsets.US_ASCII);
+        if(!content.startsWith(header))
+        {
+            return 0;
+        }
+
+        int lineStart = header.length();
+        int lineEnd;
+        while((lineEnd = content.indexOf('\n', lineStart)) != -1)
+        {
+            String[] fields = content.substring(lineStart, lineEnd).split(" ");
+            long firstOperation = Long.parseLong(fields[0]);
+            int nbOperations = Integer.parseInt(fields[1]);
+            if(addRange(firstOperation, firstOperation + nbOperations))
+            {
+                nbResumedOperations += nbOperations;
+                resumedResult += Integer.parseInt(fields[2]);
+            }
+            else
+            {
+                nbOverlappingLines++;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return lineStart;
+    }
+
+    // Adds [from, to[ to the completed ranges and merges it with its neighbours. Returns false, and adds
+    // nothing, if the range overlaps a completed range even in part: its sum cannot be split.
+    private boolean addRange(long from, long to)
+    {
+        Map.Entry<Long, Long> previous = completedRanges.floorEntry(from);
+        Map.Entry<Long, Long> next = completedRanges.ceilingEntry(from);
+        if((previous != null && previous.getValue() > from) || (next != null && next.getKey() < to))
+        {
+            return false;
+        }
+        if(previous != null && previous.getValue() == from)
+        {
+            from = previous.getKey();
+            completedRanges.remove(from);
+        }
+        if(next != null && next.getKey() == to)
+        {
+            to = next.getValue();
+            completedRanges.remove(next.getKey());
+        }
+        completedRanges.put(from, to);
+        return true;
+    }
+
+    private static long getChecksum(File operationsFile) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        try (RandomAccessFile file = new RandomAccessFile(operationsFile, "r"))
+        {
+            byte[] bytes = new byte[(int) Math.min(IDENTITY_BYTES, file.length())];
+            file.readFully(bytes);
+            crc.update(bytes);
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,87 @@
+package loadbalancer;
+
+/**
+ * Taille de tache adaptative pour un serveur de calcul (AIMD).
+ *
+ * La taille augmente d'une operation a chaque tache acceptee et est divisee par deux
+ * a chaque TaskRejectedException. Un serveur rejette avec une probabilite
+ * (taille - capacite) / (4 * capacite), la taille oscille donc autour du point ou
+ * le cout des rejets compense le gain des grosses taches. Un serveur a file bornee
+ * (AdmissionControl) qui refuse une tache faute de place ne fait pas reduire la taille.
+ * Chaque changement de la taille entiere est affiche, hors du verrou ; l'etat final est affiche a la fin (toString).
+ * **/
+public class ChunkSizer {
+
+    private static final int ADDITIVE_INCREASE = 1;
+    private static final double DEFAULT_MULTIPLICATIVE_DECREASE = 0.5;
+    private static final int MIN_SIZE = 1;
+
+    private final String serverName;
+    private final int maxSize;
+    private double size;
+    private double multiplicativeDecrease = DEFAULT_MULTIPLICATIVE_DECREASE;
+
+    private long nbAccepted = 0;
+    private long nbRejected = 0;
+
+    public ChunkSizer(String serverName, int capacity)
+    {
+        this.serverName = serverName;
+        // A partir de 5 * capacite, le serveur rejette toujours
+        this.maxSize = Math.max(MIN_SIZE, 5 * capacity - 1);
+        this.size = Math.min(maxSize, Math.max(MIN_SIZE, 2 * capacity));
+    }
+
+    public synchronized int nextSize()
+    {
+        return (int) size;
+    }
+
+    // Factor applied to the size at each rejection, between 0 and 1
+    public synchronized void setMultiplicativeDecrease(double multiplicativeDecrease)
+    {
+        this.multiplicativeDecrease = Math.min(1, Math.max(0, multiplicativeDecrease));
+    }
+
+    public void onAccepted(int taskSize)
+    {
+        int previousSize;
+        int newSize;
+        synchronized (this)
+        {
+            nbAccepted++;
+            previousSize = (int) size;
+            size = Math.min(maxSize, size + ADDITIVE_INCREASE);
+            newSize = (int) size;
+        }
+        if(newSize != previousSize)
+        {
+            log("accepted " + taskSize + " ops", previousSize, newSize);
+        }
+    }
+
+    public void onRejected(int taskSize)
+    {
+        int previousSize;
+        int newSize;
+        synchronized (this)
+        {
+            nbRejected++;
+            previousSize = (int) size;
+            size = Math.max(MIN_SIZE, size * multiplicativeDecrease);
+            newSize = (int) size;
+        }
+        log("rejected " + taskSize + " ops", previousSize, newSize);
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "Server " + serverName + " : size " + (int) size + ", " + nbAccepted + " accepted, " + nbRejected + " rejected";
+    }
+
+    private void log(String event, int previousSize, int newSize)
+    {
+        System.out.println("[ChunkSizer " + serverName + "] " + event + ", size " + previousSize + " -> " + newSize);
+    }
+}
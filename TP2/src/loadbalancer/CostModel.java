@@ -0,0 +1,180 @@
+package loadbalancer;
+
+import shared.PackedTask;
+
+/**
+ * Cout estime des operations, pour former les taches par cout plutot que par nombre d'operations.
+ *
+ * La forme du cout vient du moteur de reference : pell x fait un appel recursif par noeud de
+ * l'arbre de Fibonacci (appels(x) = appels(x-1) + appels(x-2) + 1), prime x fait environ
+ * x^2 / (2 ln x) iterations de isPrime. Le temps par unite de chaque opcode est appris des
+ * taches acceptees : moindres carres, avec oubli exponentiel, de temps de service = a * unites pell
+ * + b * unites prime + c (c : cout fixe d'une tache). Le rapport a / b est ramene vers celui mesure
+ * sur une machine de reference (ridge, PRIOR_WEIGHT) : pell coute peu et se distingue mal dans le
+ * temps d'une tache, l'echelle reste libre. Avant MIN_SAMPLES taches, ou si a ou b sortent negatifs,
+ * on garde les valeurs de reference.
+ * Seul le rapport entre les opcodes compte pour la taille des taches ; le moteur rapide ou le
+ * cache des serveurs changent la forme du cout, l'apprentissage n'en corrige que l'echelle.
+ * Les estimations sont lues par le fil du repartiteur, les mesures viennent des fils des taches.
+ * **/
+public class CostModel {
+
+    private static final double[] PRIOR_NANOS_PER_UNIT = { 2.2, 2.6 }; // Operations timed on one core, by opcode
+    private static final double SCALE = 1E-6; // the fit works in ms and millions of units: same slope, better conditioned
+    private static final double FORGETTING = 0.98; // poids des anciennes mesures a chaque nouvelle tache
+    private static final int MIN_SAMPLES = 10;
+    private static final double PRIOR_WEIGHT = 100; // in squared millions of units, a task of 10 primes weighs about 2500
+    private static final double[] PELL_CALLS = new double[64];
+
+    static
+    {
+        PELL_CALLS[0] = 1;
+        PELL_CALLS[1] = 1;
+        for(int x = 2; x < PELL_CALLS.length; x++)
+        {
+            PELL_CALLS[x] = PELL_CALLS[x - 1] + PELL_CALLS[x - 2] + 1;
+        }
+    }
+
+    private volatile double[] nanosPerUnit = PRIOR_NANOS_PER_UNIT.clone();
+    // Normal equations of the fit, features (pell units, prime units, 1)
+    private final double[][] products = new double[3][3];
+    private final double[] targets = new double[3];
+    private int nbSamples = 0;
+
+    // Work of one operation, in recursive calls for pell and loop iterations for prime
+    public static double getUnits(byte opcode, int operand)
+    {
+        if(opcode == PackedTask.OP_PELL)
+        {
+            return PELL_CALLS[Math.max(0, Math.min(PELL_CALLS.length - 1, operand))];
+        }
+        if(operand <= 2)
+        {
+            return 1;
+        }
+        return operand + operand * (double) operand / (2 * Math.log(operand));
+    }
+
+    public double estimate(byte opcode, int operand)
+    {
+        return nanosPerUnit[opcode] * getUnits(opcode, operand);
+    }
+
+    public double estimate(PackedTask task)
+    {
+        double[] units = new double[2];
+        addUnits(task, 0, task.size(), units);
+        return getCost(units);
+    }
+
+    // Estimated ns of the given work, indexed by opcode
+    public double getCost(double[] unitsPerOpcode)
+    {
+        double[] weights = nanosPerUnit;
+        return weights[PackedTask.OP_PELL] * unitsPerOpcode[PackedTask.OP_PELL]
+                + weights[PackedTask.OP_PRIME] * unitsPerOpcode[PackedTask.OP_PRIME];
+    }
+
+    // Adds the work of the operations in [from, to[ of the task
+    public static void addUnits(PackedTask task, int from, int to, double[] unitsPerOpcode)
+    {
+        byte[] opcodes = task.getOpcodes();
+        int[] operands = task.getOperands();
+        for(int i = from; i < to; i++)
+        {
+            unitsPerOpcode[opcodes[i]] += getUnits(opcodes[i], operands[i]);
+        }
+    }
+
+    // Number of first operations of the task to send: at most maxSize, and stops once maxCost is reached
+    public int getPrefixSize(PackedTask task, int maxSize, double maxCost)
+    {
+        byte[] opcodes = task.getOpcodes();
+        int[] operands = task.getOperands();
+        int limit = Math.min(maxSize, task.size());
+        double cost = 0;
+        for(int i = 0; i < limit; i++)
+        {
+            cost += estimate(opcodes[i], operands[i]);
+            if(cost >= maxCost)
+            {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    // The task was calculated by a server in serviceNanos, round trip and queueing excluded
+    public synchronized void onTaskAccepted(PackedTask task, double serviceNanos)
+    {
+        double[] units = new double[2];
+        addUnits(task, 0, task.size(), units);
+        double[] features = { units[PackedTask.OP_PELL] * SCALE, units[PackedTask.OP_PRIME] * SCALE, 1 };
+        for(int i = 0; i < 3; i++)
+        {
+            for(int j = 0; j < 3; j++)
+            {
+                products[i][j] = FORGETTING * products[i][j] + features[i] * features[j];
+            }
+            targets[i] = FORGETTING * targets[i] + features[i] * serviceNanos * SCALE;
+        }
+        nbSamples++;
+        if(nbSamples >= MIN_SAMPLES)
+        {
+            fit();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        double[] weights = nanosPerUnit;
+        return "Cost model: pell " + String.format("%.2f", weights[PackedTask.OP_PELL]) + " ns/call, prime "
+                + String.format("%.2f", weights[PackedTask.OP_PRIME]) + " ns/iteration (" + nbSamples + " tasks)";
+    }
+
+    // Solves the normal equations by Cramer's rule, the estimates change only if both slopes are positive
+    private void fit()
+    {
+        double[][] system = new double[3][];
+        for(int i = 0; i < 3; i++)
+        {
+            system[i] = products[i].clone();
+        }
+        // Penalty PRIOR_WEIGHT * (a - ratio * b)^2
+        double ratio = PRIOR_NANOS_PER_UNIT[PackedTask.OP_PELL] / PRIOR_NANOS_PER_UNIT[PackedTask.OP_PRIME];
+        system[0][0] += PRIOR_WEIGHT;
+        system[0][1] -= PRIOR_WEIGHT * ratio;
+        system[1][0] -= PRIOR_WEIGHT * ratio;
+        system[1][1] += PRIOR_WEIGHT * ratio * ratio;
+
+        double determinant = determinant(system);
+        if(Math.abs(determinant) < 1E-12)
+        {
+            return;
+        }
+        double[] solution = new double[2];
+        for(int k = 0; k < 2; k++)
+        {
+            double[][] replaced = new double[3][];
+            for(int i = 0; i < 3; i++)
+            {
+                replaced[i] = system[i].clone();
+                replaced[i][k] = targets[i];
+            }
+            solution[k] = determinant(replaced) / determinant;
+        }
+        if(solution[PackedTask.OP_PELL] > 0 && solution[PackedTask.OP_PRIME] > 0)
+        {
+            nanosPerUnit = solution;
+        }
+    }
+
+    private static double determinant(double[][] m)
+    {
+        return m[0][0] * (m[1][1] * m[2][2] - m[1][2] * m[2][1])
+                - m[0][1] * (m[1][0] * m[2][2] - m[1][2] * m[2][0])
+                + m[0][2] * (m[1][0] * m[2][1] - m[1][1] * m[2][0]);
+    }
+}
@@ -0,0 +1,60 @@
+package loadbalancer;
+
+import shared.PackedTask;
+
+import java.util.ArrayList;
+
+/**
+ * Tache du mode securise en cours de calcul, eventuellement sur plusieurs serveurs.
+ *
+ * Quand il ne reste plus d'operations a envoyer, un serveur libre recoit une copie de la tache
+ * en cours depuis le plus longtemps, pour ne pas attendre un serveur lent en fin de travail.
+ * Le premier resultat accepte est compte ; les copies qui arrivent ensuite sont ignorees.
+ * **/
+public class HedgedTask {
+
+    private final PackedTask task;
+    private final long submitTime; // System.nanoTime() of the first copy
+    private final int firstServer;
+    private final ArrayList<Integer> servers = new ArrayList<>(); // servers computing a copy
+
+    public HedgedTask(PackedTask task, int firstServer)
+    {
+        this.task = task;
+        this.submitTime = System.nanoTime();
+        this.firstServer = firstServer;
+        servers.add(firstServer);
+    }
+
+    public PackedTask getTask() {
+        return task;
+    }
+
+    public long getSubmitTime() {
+        return submitTime;
+    }
+
+    public int getFirstServer() {
+        return firstServer;
+    }
+
+    public int getNbCopies()
+    {
+        return servers.size();
+    }
+
+    public boolean isOnServer(int serverNumber)
+    {
+        return servers.contains(serverNumber);
+    }
+
+    public void onCopySubmitted(int serverNumber)
+    {
+        servers.add(serverNumber);
+    }
+
+    public void onCopyFailed(int serverNumber)
+    {
+        servers.remove(Integer.valueOf(serverNumber));
+    }
+}
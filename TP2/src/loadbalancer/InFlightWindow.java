@@ -0,0 +1,97 @@
+package loadbalancer;
+
+/**
+ * Nombre de taches envoyees a un serveur sans attendre leur resultat.
+ *
+ * Pendant qu'un serveur calcule une tache, la suivante traverse deja le reseau : la fenetre vaut
+ * 1 + aller-retour / temps de calcul d'une tache, bornee par maxSize. L'aller-retour est mesure
+ * par ping(). Le temps de calcul vient de la duree des taches acceptees, sans l'aller-retour et
+ * divisee par le nombre de taches en cours sur le serveur, pour une tache de la taille donnee
+ * par le ChunkSizer (donc par la capacite du serveur).
+ * La fenetre compte aussi les operations en cours, le travail restant vu par le SchedulingStrategy.
+ * **/
+public class InFlightWindow {
+
+    private static final double SMOOTHING = 0.2; // poids d'une nouvelle mesure dans les moyennes
+
+    private int maxSize;
+    private double rttNanos = -1; // -1 until the first ping
+    private double nanosPerOperation = -1; // -1 until the first accepted task
+    private int nbInFlight = 0; // dispatcher thread only
+    private int nbOperationsInFlight = 0; // dispatcher thread only
+
+    public InFlightWindow(int maxSize)
+    {
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    public synchronized void setMaxSize(int maxSize)
+    {
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    public synchronized void onPing(long elapsedNanos)
+    {
+        rttNanos = rttNanos < 0 ? elapsedNanos : rttNanos + SMOOTHING * (elapsedNanos - rttNanos);
+    }
+
+    // Called from the worker thread when a task sent with nbInFlightAtSubmit tasks in flight (itself included) was accepted
+    public synchronized void onTaskAccepted(int taskSize, long elapsedNanos, int nbInFlightAtSubmit)
+    {
+        double sample = getServiceNanos(elapsedNanos, nbInFlightAtSubmit) / Math.max(1, taskSize);
+        nanosPerOperation = nanosPerOperation < 0 ? sample : nanosPerOperation + SMOOTHING * (sample - nanosPerOperation);
+    }
+
+    // Time spent calculating the task: the round trip is removed and the rest shared with the tasks sent before it
+    public synchronized double getServiceNanos(long elapsedNanos, int nbInFlightAtSubmit)
+    {
+        return Math.max(0, elapsedNanos - Math.max(0, rttNanos)) / Math.max(1, nbInFlightAtSubmit);
+    }
+
+    public synchronized int getSize(int taskSize)
+    {
+        if(rttNanos < 0 || nanosPerOperation < 0)
+        {
+            return 1;
+        }
+        double serviceNanos = Math.max(1, nanosPerOperation * taskSize);
+        return (int) Math.min(maxSize, 1 + Math.ceil(rttNanos / serviceNanos));
+    }
+
+    public boolean isFull(int taskSize)
+    {
+        return nbInFlight >= getSize(taskSize);
+    }
+
+    public int getNbInFlight() {
+        return nbInFlight;
+    }
+
+    public int getNbOperationsInFlight() {
+        return nbOperationsInFlight;
+    }
+
+    // -1 until the first accepted task
+    public synchronized double getNanosPerOperation() {
+        return nanosPerOperation;
+    }
+
+    public void onTaskSubmitted(int taskSize)
+    {
+        nbInFlight++;
+        nbOperationsInFlight += taskSize;
+    }
+
+    public void onTaskCompleted(int taskSize)
+    {
+        nbInFlight--;
+        nbOperationsInFlight -= taskSize;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "rtt " + String.format("%.2f", rttNanos / 1E6) + " ms, " + String.format("%.3f", nanosPerOperation / 1E6)
+                + " ms/op";
+    }
+}
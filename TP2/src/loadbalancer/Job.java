@@ -0,0 +1,247 @@
+package loadbalancer;
+
+import shared.PackedTask;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Un travail : un fichier d'operations dont le repartiteur calcule la somme.
+ *
+ * Le travail garde ses operations a envoyer, sa somme, son journal de reprise et son poids dans
+ * le partage des serveurs (JobScheduler). Un travail de poids 2 recoit deux fois plus d'operations
+ * qu'un travail de poids 1 tant que les deux ont des operations a envoyer.
+ * Utilise seulement par le fil du repartiteur une fois soumis.
+ * **/
+public class Job {
+
+    private static final String CHECKPOINTS_DIRECTORY = "checkpoints";
+
+    private final String name;
+    private final File operationsFile;
+    private final int weight;
+    private final File jobFile; // description of the job, deleted when it is done, null if there is none
+    private final File resultFile; // written when the job is done, null to only print the result
+    private final File failedFile; // name of the job file if the operations cannot be read, null if there is none
+    private final OperationsReader operationsReader;
+    private final PendingOperations pendingOperations;
+    private CheckpointJournal journal;
+    private int result = 0;
+    private int nbRunningTasks = 0;
+    private double virtualTime = 0; // operations sent divided by the weight, see JobScheduler
+    private final long submitTime = System.nanoTime();
+    private long firstDispatchTime = 0;
+    private long finishTime = 0;
+
+    /**
+     * Opens the operations file, and resumes from the journal of a previous run of the job if checkpointing
+     * **/
+    public Job(String name, File operationsFile, int weight, File jobFile, File resultFile, File failedFile, boolean checkpointing)
+            throws IOException
+    {
+        this.name = name;
+        this.operationsFile = operationsFile;
+        this.weight = Math.max(1, weight);
+        this.jobFile = jobFile;
+        this.resultFile = resultFile;
+        this.failedFile = failedFile;
+        this.operationsReader = new OperationsReader(operationsFile);
+        this.pendingOperations = new PendingOperations(operationsReader);
+        if(checkpointing)
+        {
+            openJournal();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public int getResult() {
+        return result;
+    }
+
+    // Time between the submission and the result, 0 while the job is running
+    public long getElapsedNanos()
+    {
+        return finishTime == 0 ? 0 : finishTime - submitTime;
+    }
+
+    public double getVirtualTime() {
+        return virtualTime;
+    }
+
+    public void setVirtualTime(double virtualTime) {
+        this.virtualTime = virtualTime;
+    }
+
+    public boolean hasPendingOperations()
+    {
+        return !pendingOperations.isEmpty();
+    }
+
+    // True once every operation was sent and every task has a result
+    public boolean isDone()
+    {
+        return pendingOperations.isEmpty() && nbRunningTasks == 0;
+    }
+
+    public PackedTask take(int maxSize, int nbServers, CostModel costModel) throws IOException
+    {
+        PackedTask task = pendingOperations.take(maxSize, nbServers, costModel);
+        nbRunningTasks++;
+        virtualTime += task.size() / (double) weight;
+        if(firstDispatchTime == 0)
+        {
+            firstDispatchTime = System.nanoTime();
+        }
+        return task;
+    }
+
+    public void putBack(PackedTask task)
+    {
+        nbRunningTasks--;
+        pendingOperations.putBack(task);
+    }
+
+    public void onTaskCompleted(PackedTask task, int taskResult)
+    {
+        nbRunningTasks--;
+        result += taskResult;
+        if(journal == null)
+        {
+            return;
+        }
+        try
+        {
+            journal.onTaskCompleted(task, taskResult);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: Could not write the checkpoint journal of " + name + ", the job continues without it. " + e.getMessage());
+            closeJournal();
+        }
+    }
+
+    // Prints and saves the result, nothing is left to resume
+    public void finish()
+    {
+        long end = System.nanoTime();
+        finishTime = end;
+        String report = "Travail " + name + " (" + operationsFile.getName() + ", poids " + weight + ") : resultat " + result
+                + ", temps " + (end - submitTime) / 1E9 + " s, attente avant le premier envoi "
+                + (firstDispatchTime == 0 ? 0 : (firstDispatchTime - submitTime) / 1E6) + " ms";
+        System.out.println(report);
+        if(resultFile != null)
+        {
+            try (PrintWriter out = new PrintWriter(new FileWriter(resultFile)))
+            {
+                out.println("result=" + result);
+                out.println("seconds=" + (end - submitTime) / 1E9);
+            }
+            catch (IOException e)
+            {
+                System.err.println("Error: Could not write " + resultFile + ". " + e.getMessage());
+            }
+        }
+        if(jobFile != null && !jobFile.delete())
+        {
+            System.err.println("Error: Could not delete " + jobFile + ".");
+        }
+
+        try
+        {
+            if(journal != null)
+            {
+                journal.delete();
+                journal = null;
+            }
+            operationsReader.close();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    // The operations could not be read: no result, the job file is renamed failedFile and the journal deleted
+    public void fail(IOException cause)
+    {
+        System.err.println("Error: Job " + name + " failed, its operations could not be read. " + cause.getMessage());
+        if(jobFile != null && failedFile != null && !jobFile.renameTo(failedFile))
+        {
+            System.err.println("Error: Could not rename " + jobFile + " to " + failedFile + ".");
+        }
+
+        try
+        {
+            if(journal != null)
+            {
+                journal.delete();
+                journal = null;
+            }
+            operationsReader.close();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    // Stops the job before it is done, its journal is kept to resume it
+    public void close()
+    {
+        closeJournal();
+        try
+        {
+            operationsReader.close();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    private void closeJournal()
+    {
+        if(journal == null)
+        {
+            return;
+        }
+        try
+        {
+            journal.close();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+        }
+        journal = null;
+    }
+
+    // Completed tasks of a previous run are skipped and their sums kept, throws if the operations file cannot be read
+    private void openJournal() throws IOException
+    {
+        try
+        {
+            journal = new CheckpointJournal(operationsFile, new File(CHECKPOINTS_DIRECTORY, name + ".journal"));
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: Could not open the checkpoint journal of " + name + ". " + e.getMessage());
+            return;
+        }
+        if(journal.getNbResumedOperations() > 0)
+        {
+            operationsReader.skip(journal.getCompletedRanges());
+            result = journal.getResumedResult();
+            System.out.println("Reprise de " + name + " : " + journal.getNbResumedOperations() + " operations deja calculees.");
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package loadbalancer;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Properties;
+
+/**
+ * Soumission de travaux par un repertoire surveille.
+ *
+ * Un fichier <nom>.job contient operations=<fichier du repertoire operations> et, au besoin,
+ * weight=<poids, defaut 1>. Il doit apparaitre d'un coup (ecrit ailleurs puis deplace avec mv).
+ * Le travail accepte est renomme <nom>.running ; a la fin, le resultat est ecrit dans <nom>.result
+ * et le fichier .running supprime. Un travail invalide (fichier d'operations introuvable, poids qui
+ * n'est pas un entier) est renomme <nom>.failed, la raison est affichee. Un travail dont les operations
+ * ne se lisent pas (pell negatif) passe aussi de .running a .failed, sans resultat. Au demarrage, les
+ * fichiers .running laisses par un repartiteur arrete sont soumis a nouveau et reprennent grace a leur journal.
+ * **/
+public class JobDirectoryWatcher implements Runnable {
+
+    private static final String JOB_EXTENSION = ".job";
+    private static final String RUNNING_EXTENSION = ".running";
+    private static final String RESULT_EXTENSION = ".result";
+    private static final String FAILED_EXTENSION = ".failed";
+
+    private final File jobsDirectory;
+    private final File operationsDirectory;
+    private final JobScheduler jobScheduler;
+    private final boolean checkpointing;
+
+    public JobDirectoryWatcher(File jobsDirectory, File operationsDirectory, JobScheduler jobScheduler, boolean checkpointing)
+    {
+        this.jobsDirectory = jobsDirectory;
+        this.operationsDirectory = operationsDirectory;
+        this.jobScheduler = jobScheduler;
+        this.checkpointing = checkpointing;
+    }
+
+    public void start()
+    {
+        Thread thread = new Thread(this, "jobs");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run()
+    {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService())
+        {
+            Files.createDirectories(jobsDirectory.toPath());
+            // Registered before the scan so that no job file is missed in between
+            jobsDirectory.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+            System.out.println("Waiting for jobs in " + jobsDirectory + ".");
+
+            File[] files = jobsDirectory.listFiles();
+            for(File file : files == null ? new File[0] : files)
+            {
+                if(file.getName().endsWith(RUNNING_EXTENSION))
+                {
+                    submit(file);
+                }
+            }
+            for(File file : files == null ? new File[0] : files)
+            {
+                if(file.getName().endsWith(JOB_EXTENSION))
+                {
+                    submit(file);
+                }
+            }
+
+            while(true)
+            {
+                WatchKey key = watchService.take();
+                for(WatchEvent<?> event : key.pollEvents())
+                {
+                    if(event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                            && event.context().toString().endsWith(JOB_EXTENSION))
+                    {
+                        submit(new File(jobsDirectory, event.context().toString()));
+                    }
+                }
+                key.reset();
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: Could not watch " + jobsDirectory + ". " + e.getMessage());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Reads the job file and submits the job, a .job file is renamed .running once the job is opened.
+    // A job that cannot be opened is renamed .failed
+    private void submit(File file)
+    {
+        String fileName = file.getName();
+        String name = fileName.substring(0, fileName.lastIndexOf('.'));
+        File runningFile = new File(jobsDirectory, name + RUNNING_EXTENSION);
+        if(fileName.endsWith(JOB_EXTENSION) && runningFile.exists())
+        {
+            System.err.println("Error: Job " + name + " is already running, " + fileName + " ignored.");
+            return;
+        }
+
+        Job job = open(file, name, runningFile);
+        if(job == null)
+        {
+            File failedFile = new File(jobsDirectory, name + FAILED_EXTENSION);
+            if(!file.renameTo(failedFile))
+            {
+                System.err.println("Error: Could not rename " + file + " to " + failedFile + ".");
+            }
+            return;
+        }
+        if(fileName.endsWith(JOB_EXTENSION) && !file.renameTo(runningFile))
+        {
+            System.err.println("Error: Could not rename " + file + ".");
+            job.close();
+            return;
+        }
+        jobScheduler.submit(job);
+    }
+
+    // Returns the job described by the file, which will be renamed runningFile, or null with the reason printed
+    private Job open(File file, String name, File runningFile)
+    {
+        Properties properties = new Properties();
+        try (Reader in = new FileReader(file))
+        {
+            properties.load(in);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: Could not read job " + name + ". " + e.getMessage());
+            return null;
+        }
+
+        String operationsFilename = properties.getProperty("operations");
+        String weightValue = properties.getProperty("weight", "1").trim();
+        int weight;
+        try
+        {
+            weight = Integer.parseInt(weightValue);
+        }
+        catch (NumberFormatException e)
+        {
+            weight = -1;
+        }
+        if(operationsFilename == null || weight < 0)
+        {
+            System.err.println("Error: Job " + name + " needs operations=<file> and an optional int weight=<weight>.");
+            return null;
+        }
+
+        try
+        {
+            return new Job(name, new File(operationsDirectory, operationsFilename.trim()), weight, runningFile,
+                    new File(jobsDirectory, name + RESULT_EXTENSION), new File(jobsDirectory, name + FAILED_EXTENSION), checkpointing);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: Could not open the operations of job " + name + ". " + e.getMessage());
+            return null;
+        }
+    }
+}
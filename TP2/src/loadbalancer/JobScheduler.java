@@ -0,0 +1,165 @@
+package loadbalancer;
+
+import shared.PackedTask;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Partage des serveurs entre les travaux en cours (weighted fair queuing).
+ *
+ * Chaque travail a un temps virtuel : le nombre d'operations qu'il a envoyees divise par son poids.
+ * Un serveur libre recoit une tache du travail qui a le plus petit temps virtuel. Un nouveau travail
+ * commence au temps virtuel du dernier travail servi : il n'a pas de credit pour le temps ou il
+ * n'existait pas. Remplace PendingOperations dans les boucles du repartiteur (take, putBack) et
+ * retrouve le travail de chaque tache pour lui ajouter son resultat. Un travail dont les operations ne
+ * se lisent pas echoue seul : ses taches en cours sont oubliees et les autres travaux continuent.
+ * Les travaux peuvent etre soumis par n'importe quel fil ; le reste n'est utilise que par le fil
+ * du repartiteur.
+ * **/
+public class JobScheduler {
+
+    private final boolean serving; // true: keeps waiting for new jobs once the current ones are done
+    private final ConcurrentLinkedQueue<Job> submittedJobs = new ConcurrentLinkedQueue<>();
+    private final ArrayList<Job> jobs = new ArrayList<>();
+    private final Map<PackedTask, Job> runningTasks = new IdentityHashMap<>(); // task sent -> its job
+    private double virtualTime = 0; // virtual time of the job served last
+    private Job lastFinishedJob;
+
+    public JobScheduler(boolean serving)
+    {
+        this.serving = serving;
+    }
+
+    // Thread-safe, the job starts at the next acceptNewJobs()
+    public void submit(Job job)
+    {
+        submittedJobs.add(job);
+    }
+
+    // Adds the jobs submitted since the last call
+    public void acceptNewJobs()
+    {
+        Job job;
+        while((job = submittedJobs.poll()) != null)
+        {
+            job.setVirtualTime(virtualTime);
+            jobs.add(job);
+            System.out.println("Travail " + job.getName() + " accepte (poids " + job.getWeight() + ").");
+            finishIfDone(job);
+        }
+    }
+
+    // True if no job has operations left to send
+    public boolean isEmpty()
+    {
+        for(Job job : jobs)
+        {
+            if(job.hasPendingOperations())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // True once every job is done, never when serving
+    public boolean isDone()
+    {
+        return !serving && jobs.isEmpty() && submittedJobs.isEmpty();
+    }
+
+    public Job getLastFinishedJob() {
+        return lastFinishedJob;
+    }
+
+    // Removes at most maxSize operations from the job with the smallest virtual time, see PendingOperations.
+    // A job whose operations cannot be read fails. Returns null if every job with operations left failed
+    public PackedTask take(int maxSize, int nbServers, CostModel costModel)
+    {
+        while(true)
+        {
+            Job nextJob = null;
+            for(Job job : jobs)
+            {
+                if(job.hasPendingOperations() && (nextJob == null || job.getVirtualTime() < nextJob.getVirtualTime()))
+                {
+                    nextJob = job;
+                }
+            }
+            if(nextJob == null)
+            {
+                return null;
+            }
+            virtualTime = nextJob.getVirtualTime();
+            try
+            {
+                PackedTask task = nextJob.take(maxSize, nbServers, costModel);
+                runningTasks.put(task, nextJob);
+                return task;
+            }
+            catch (IOException e)
+            {
+                fail(nextJob, e);
+            }
+        }
+    }
+
+    // The task failed, its operations are sent again. Ignored if its job failed
+    public void putBack(PackedTask task)
+    {
+        Job job = runningTasks.remove(task);
+        if(job != null)
+        {
+            job.putBack(task);
+        }
+    }
+
+    // Adds the result of the task to its job, which is reported if it is done. Ignored if its job failed
+    public void onTaskCompleted(PackedTask task, int result)
+    {
+        Job job = runningTasks.remove(task);
+        if(job == null)
+        {
+            return;
+        }
+        job.onTaskCompleted(task, result);
+        finishIfDone(job);
+    }
+
+    // Stops the jobs that are not done, their journals are kept
+    public void close()
+    {
+        for(Job job : jobs)
+        {
+            job.close();
+        }
+        jobs.clear();
+        Job job;
+        while((job = submittedJobs.poll()) != null)
+        {
+            job.close();
+        }
+    }
+
+    // The tasks of the job still running are forgotten, their results are ignored
+    private void fail(Job job, IOException cause)
+    {
+        jobs.remove(job);
+        runningTasks.values().removeIf(runningJob -> runningJob == job);
+        job.fail(cause);
+    }
+
+    private void finishIfDone(Job job)
+    {
+        if(job.isDone())
+        {
+            jobs.remove(job);
+            job.finish();
+            lastFinishedJob = job;
+        }
+    }
+}
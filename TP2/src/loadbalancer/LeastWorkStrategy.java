@@ -0,0 +1,41 @@
+package loadbalancer;
+
+import java.util.ArrayList;
+
+/**
+ * Le serveur disponible qui aura fini le plus tot les operations en cours : operations en vol fois le
+ * temps de calcul par operation mesure (SchedulingStrategy.getOutstandingNanos). En cas d'egalite, par
+ * exemple au debut du travail, le serveur de plus grande capacite.
+ * **/
+public class LeastWorkStrategy implements SchedulingStrategy {
+
+    @Override
+    public int selectServer(ArrayList<ServerHandle> servers)
+    {
+        double defaultNanosPerOperation = SchedulingStrategy.getSlowestNanosPerOperation(servers);
+        int selected = -1;
+        double selectedWork = 0;
+        for(int i = 0; i < servers.size(); i++)
+        {
+            ServerHandle server = servers.get(i);
+            if(!server.isAvailable())
+            {
+                continue;
+            }
+            double work = SchedulingStrategy.getOutstandingNanos(server, defaultNanosPerOperation);
+            if(selected == -1 || work < selectedWork
+                    || (work == selectedWork && server.getInfo().getCapacity() > servers.get(selected).getInfo().getCapacity()))
+            {
+                selected = i;
+                selectedWork = work;
+            }
+        }
+        return selected;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "least-work";
+    }
+}
@@ -8,50 +8,84 @@ import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
-
-import static shared.ApplicationProperties.getPropertyValueFromKey;
+import java.util.concurrent.atomic.LongAdder;
 
 public class LoadBalancer {
 
     private static String username;
     private String password;
+    private SessionToken sessionToken;
+    private long sessionRenewalTime; // System.nanoTime() after which the session is renewed
     private static AuthenticationServiceInterface authenticationServiceStub;
-    private ArrayList<OperationServerInterface> operationServerStubs;
-    private ArrayList<OperationServerSharedInfo> operationServersInfos;
+    private ArrayList<ServerHandle> servers = new ArrayList<>(); // indexed by server number, servers are never removed
+    private boolean liveMembership; // false when the servers are given by the caller
+    private long membershipVersion = -1; // last version of the available servers read from the service
+    private long nextMembershipPoll = 0; // System.nanoTime() of the next membership version check
+    private static final long MEMBERSHIP_POLL_MILLIS = 1000;
+    private int maxInFlightTasks; // per server, 1 waits for each result before sending the next task
+    private Configuration configuration; // settings applied last, null when they are given by the caller
+    private ExecutorService pingExecutor;
+    private SchedulingStrategy schedulingStrategy = new LeastWorkStrategy(); // secure mode and verified results: server of each new task
+    private boolean hedging = true; // secure mode: copy the oldest tasks to idle servers once nothing is left to send
+    private int maxCopies = DEFAULT_MAX_COPIES;
+    private static final int DEFAULT_MAX_COPIES = 2;
+    private long tailNanos = 0; // time between the last task sent from the file and the end of the job
     private static final String OPERATIONS_DIRECTORY = "operations";
-    private static AtomicInteger totalResult = new AtomicInteger(0);
+    private boolean checkpointing = false; // journal of the completed tasks, to resume the job after a crash
+    private volatile CostModel costModel = new CostModel(); // null: tasks formed by number of operations only
+    private boolean resultVectors = true; // non-secure mode: one result per operation, only the operations in disagreement are verified again
+    private ResultVerifier.Mode verification = ResultVerifier.Mode.REPLICA; // non-secure mode: replicas that vote, or results checked by the balancer
+    private double spotCheckRate = DEFAULT_SPOT_CHECK_RATE;
+    private ResultVerifier resultVerifier; // of the running jobs, null in secure mode and with replicas
+    private static final double DEFAULT_SPOT_CHECK_RATE = 0.1;
+    private long nbReverifiedOperations = 0; // operations sent to the servers that break the ties
+    private AtomicInteger totalResult = new AtomicInteger(0);
+    private long firstDispatchTime = 0;
+
+    // Metrics, recorded by the dispatcher and the worker threads
+    private final Metrics metrics = new Metrics("loadbalancer");
+    private final LongAdder tasksInFlight = metrics.counter("tasksInFlight");
+    private final LongAdder tasksRejected = metrics.counter("tasksRejected");
+    private final LongAdder tasksUnreachable = metrics.counter("tasksUnreachable");
+    private final LongAdder falseIdentities = metrics.counter("falseIdentities");
+    private final LongAdder mismatches = metrics.counter("mismatches");
+    private final LongAdder operationsCompleted = metrics.counter("operationsCompleted");
 
     public static void main(String[] args)
     {
+        // --<property>=<value> overrides application.properties
+        args = Configuration.parseArguments(args);
         if(args.length != 3)
         {
             System.err.println("Error: Not enough parameters to execute the program.");
             return;
         }
 
-        String secureValue = getPropertyValueFromKey("secure");
-        if(secureValue == null)
+        Boolean secure = Configuration.get().getSecure();
+        if(secure == null)
         {
             System.err.println("Error: Could not read secure property value in application.properties.");
             return;
         }
+        // The scheduler settings can then be changed in application.properties while the jobs run
+        Configuration.watch();
 
         LoadBalancer loadBalancer = new LoadBalancer(args[0], args[1]);
 
         // If the loadbalancer crashes or exits
         Runtime.getRuntime().addShutdownHook(new ShutDownTask());
 
-        if(Boolean.parseBoolean(secureValue))
+        if(args[2].startsWith("--jobs="))
         {
-            // Mode securise
-            loadBalancer.runSecurely(args[2]);
+            loadBalancer.serve(new File(args[2].substring("--jobs=".length())), secure);
         }
         else
         {
-            // Mode non-securise
-            loadBalancer.runInsecurely(args[2]);
+            loadBalancer.run(args[2], secure);
         }
+        loadBalancer.metrics.close();
     }
 
     /**
@@ -85,22 +119,53 @@ public class LoadBalancer {
             System.setSecurityManager(new SecurityManager());
         }
 
-        String authenticationServiceIp = getPropertyValueFromKey("serviceIp");
-        authenticationServiceStub = loadAuthenticationServiceStub(authenticationServiceIp);
+        Configuration configuration = Configuration.get();
+        checkpointing = configuration.isCheckpoint();
+        verification = ResultVerifier.getMode(configuration.getVerification());
+        if(verification == null)
+        {
+            System.err.println("Error: unknown verification mode " + configuration.getVerification() + ", use replica, spot or full.");
+            System.exit(0);
+        }
+        applyConfiguration(configuration);
+        metrics.rate("operationsPerSecond", operationsCompleted);
+        metrics.export(configuration.getMetricsPort());
+
+        authenticationServiceStub = loadAuthenticationServiceStub(configuration.getServiceIp());
         try {
             authenticationServiceStub.registerLoadBalancer(username, password);
-            operationServersInfos = authenticationServiceStub.getAvailableServersInfo();
         } catch (RemoteException e) {
             System.out.println("Error : " + e.getMessage());
         }
-        operationServerStubs = loadOperationServerStubs();
-        if(operationServerStubs.isEmpty())
+        liveMembership = true;
+        refreshMembership();
+        if(servers.isEmpty())
         {
             System.out.println("Error: no server available to calculate.");
             System.exit(0);
         }
     }
 
+    /**
+     * Runs against servers that are already resolved, for example in-process stubs in benchmarks
+     * **/
+    LoadBalancer(String username, String password, AuthenticationServiceInterface authenticationService,
+                 ArrayList<OperationServerSharedInfo> serversInfos, ArrayList<OperationServerInterface> serverStubs,
+                 int maxInFlightTasks) throws RemoteException
+    {
+        LoadBalancer.username = username;
+        this.password = password;
+        this.maxInFlightTasks = maxInFlightTasks;
+        authenticationServiceStub = authenticationService;
+        authenticationServiceStub.registerLoadBalancer(username, password);
+        liveMembership = false;
+        metrics.rate("operationsPerSecond", operationsCompleted);
+        for(int i = 0; i < serversInfos.size(); i++)
+        {
+            addServer(serversInfos.get(i), serverStubs.get(i));
+        }
+    }
+
     /**
      * Load the name service stub
      * **/
@@ -110,8 +175,7 @@ public class LoadBalancer {
 
         try
         {
-            int rmiPort = Integer.parseInt(ApplicationProperties.getPropertyValueFromKey("rmiPort"));
-            Registry registry = LocateRegistry.getRegistry(hostname, rmiPort);
+            Registry registry = LocateRegistry.getRegistry(hostname, Configuration.get().getRmiPort());
             stub = (AuthenticationServiceInterface) registry.lookup("authenticationservice");
         }
         catch (NotBoundException e)
@@ -128,22 +192,15 @@ public class LoadBalancer {
     }
 
     /**
-     * Load all operation servers stubs
+     * Load the stub of an operation server, or null if it is not in the registry
      * **/
-    private ArrayList<OperationServerInterface> loadOperationServerStubs() {
-
-        ArrayList<OperationServerInterface> stubList = new ArrayList<>();
+    private OperationServerInterface loadOperationServerStub(OperationServerSharedInfo serverInfo)
+    {
+        OperationServerInterface stub = null;
         try
         {
-            int rmiPort = Integer.parseInt(ApplicationProperties.getPropertyValueFromKey("rmiPort"));
-            for(OperationServerSharedInfo serverInfo : operationServersInfos)
-            {
-                Registry registry = LocateRegistry.getRegistry(serverInfo.getIpAddress(), rmiPort);
-                OperationServerInterface stub = null;
-                stub = (OperationServerInterface) registry.lookup(serverInfo.getIpAddress() + ":" + serverInfo.getPort());
-
-                stubList.add(stub);
-            }
+            Registry registry = LocateRegistry.getRegistry(serverInfo.getIpAddress(), Configuration.get().getRmiPort());
+            stub = (OperationServerInterface) registry.lookup(ServerHandle.getName(serverInfo));
         }
         catch (NotBoundException e)
         {
@@ -152,281 +209,962 @@ public class LoadBalancer {
         }
         catch (RemoteException e)
         {
-            System.err.println("Error1: " + e.getMessage());
+            System.err.println("Error: " + e.getMessage());
         }
 
-        return stubList;
+        return stub;
     }
 
     /**
-     * Called when secure parameter is true in application.properties
+     * Asks the service for the membership changes at most every MEMBERSHIP_POLL_MILLIS:
+     * servers that joined start receiving tasks, servers that left do not.
      * **/
-    private void runSecurely(String operationsFilename)
+    private void refreshMembership()
     {
-        ArrayList<String> operationsList = readOperationsFile(operationsFilename);
-        int nbAvailableServers = operationServerStubs.size();
+        if(!liveMembership || System.nanoTime() - nextMembershipPoll < 0)
+        {
+            return;
+        }
+        nextMembershipPoll = System.nanoTime() + MEMBERSHIP_POLL_MILLIS * 1000000;
 
-        Thread[] threads = new Thread[nbAvailableServers];
-        int[] activeServersCapacities = new int[nbAvailableServers];
+        try
+        {
+            MembershipChanges changes = authenticationServiceStub.getMembershipChanges(membershipVersion);
+            if(changes.getVersion() == membershipVersion)
+            {
+                return;
+            }
+            // A server missing from the registry is part of the changes again at the next poll
+            membershipVersion = applyMembershipChanges(changes) ? changes.getVersion() : membershipVersion;
+        }
+        catch (RemoteException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
 
-        long start = System.nanoTime();
-        while(!operationsList.isEmpty() || (isAnyThreadAlive(threads)))
+    // Activates the servers that joined and deactivates those that left. Returns false if a stub could not be loaded.
+    private boolean applyMembershipChanges(MembershipChanges changes)
+    {
+        HashSet<String> leftServers = new HashSet<>();
+        for(OperationServerSharedInfo serverInfo : changes.getLeft())
+        {
+            leftServers.add(ServerHandle.getName(serverInfo));
+        }
+        if(changes.isFullSnapshot())
         {
-            for (int i = 0; i < threads.length; i++)
+            // Every server that is not listed left
+            HashSet<String> listedServers = new HashSet<>();
+            for(OperationServerSharedInfo serverInfo : changes.getJoined())
+            {
+                listedServers.add(ServerHandle.getName(serverInfo));
+            }
+            for(ServerHandle server : servers)
             {
-                if (threads[i] == null || !threads[i].isAlive())
+                if(!listedServers.contains(server.getName()))
                 {
-                    activeServersCapacities[i] = operationServersInfos.get(i).getCapacity();
+                    leftServers.add(server.getName());
                 }
             }
+        }
 
-            Integer threadNumber = getServerWithBiggestCapacity(activeServersCapacities);
-            activeServersCapacities = new int[nbAvailableServers];
-
-            if(threadNumber == null || operationsList.isEmpty())
+        for(ServerHandle server : servers)
+        {
+            if(server.isActive() && leftServers.contains(server.getName()))
             {
-                // No thread available
-                continue;
+                server.deactivate();
+                System.out.println("Server " + server.getName() + " left the cluster.");
             }
-            int serverCapacity = operationServersInfos.get(threadNumber).getCapacity();
+        }
 
-            ArrayList<String> task = operationsList;
-            if(2*serverCapacity <= operationsList.size())
+        boolean allServersLoaded = true;
+        for(OperationServerSharedInfo serverInfo : changes.getJoined())
+        {
+            // The stub is loaded again even for an active server, which may have restarted
+            String serverName = ServerHandle.getName(serverInfo);
+            ServerHandle server = getServer(serverName);
+            OperationServerInterface stub = loadOperationServerStub(serverInfo);
+            if(stub == null)
             {
-                task = new ArrayList<String>(operationsList.subList(0, 2 * serverCapacity));
+                allServersLoaded = false;
             }
-
-            final ArrayList<String> threadTask = new ArrayList<>(task);
-
-            // Remove operations from 0 to task size
-            operationsList.subList(0, task.size()).clear();
-            threads[threadNumber] = new Thread(() ->
+            else if(server == null)
             {
-                try
+                addServer(serverInfo, stub);
+                System.out.println("Server " + serverName + " joined the cluster.");
+            }
+            else
+            {
+                if(!server.isActive())
                 {
-                    int result = operationServerStubs.get(threadNumber).calculateResult(LoadBalancer.username, this.password, threadTask);
-                    totalResult.getAndAdd(result);
+                    System.out.println("Server " + serverName + " joined the cluster again.");
                 }
-                catch (RemoteException | TaskRejectedException e)
+                server.activate(serverInfo, stub);
+            }
+        }
+        return allServersLoaded;
+    }
+
+    /**
+     * Measures the round trip time of each server every few seconds, in a separate thread
+     * so that the dispatcher does not wait for the network
+     * **/
+    private void pingServers()
+    {
+        for(ServerHandle server : servers)
+        {
+            if(!server.shouldPing())
+            {
+                continue;
+            }
+            if(pingExecutor == null)
+            {
+                pingExecutor = Executors.newSingleThreadExecutor(runnable ->
                 {
-                    operationsList.addAll(threadTask);
-                    //System.err.println("Error: " + e.getMessage());
+                    Thread thread = new Thread(runnable, "ping");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            final OperationServerInterface serverStub = server.getStub();
+            final InFlightWindow window = server.getWindow();
+            pingExecutor.submit(() ->
+            {
+                try
+                {
+                    long start = System.nanoTime();
+                    serverStub.ping();
+                    window.onPing(System.nanoTime() - start);
                 }
-                catch (FalseIdentityException e)
+                catch (RemoteException e)
                 {
                     System.err.println("Error: " + e.getMessage());
-                    System.exit(0);
                 }
             });
-            threads[threadNumber].start();
         }
+    }
 
-        // Wait for threads to terminate
-        for (Thread thread : threads)
+    // Applies the scheduler settings again when application.properties changed
+    private void refreshConfiguration()
+    {
+        if(configuration != null && Configuration.get() != configuration)
         {
-            try
+            applyConfiguration(Configuration.get());
+            System.out.println("Scheduler settings applied: window " + maxInFlightTasks + ", hedging " + hedging + " (" + maxCopies
+                    + " copies), costBasedTasks " + (costModel != null) + ", resultVectors " + resultVectors + ", spotCheckRate " + spotCheckRate + ", scheduling " + schedulingStrategy.getName());
+        }
+    }
+
+    // Scheduler settings, also applied to the servers already known. The mode and the verification are kept until a restart
+    private void applyConfiguration(Configuration configuration)
+    {
+        this.configuration = configuration;
+        maxInFlightTasks = configuration.getMaxInFlightTasks();
+        hedging = configuration.isHedging();
+        maxCopies = configuration.getMaxCopies();
+        if(!configuration.getScheduling().equalsIgnoreCase(schedulingStrategy.getName()))
+        {
+            SchedulingStrategy strategy = SchedulingStrategy.forName(configuration.getScheduling());
+            if(strategy == null)
             {
-                if(thread != null)
-                {
-                    thread.join();
-                }
+                System.err.println("Error: unknown scheduling strategy " + configuration.getScheduling() + ", use one of "
+                        + String.join(", ", SchedulingStrategy.NAMES) + ". Keeping " + schedulingStrategy.getName() + ".");
             }
-            catch (InterruptedException e)
+            else
             {
-                System.err.println("Error: " + e.getMessage());
+                schedulingStrategy = strategy;
+            }
+        }
+        if(configuration.isCostBasedTasks() != (costModel != null))
+        {
+            setCostBasedTasks(configuration.isCostBasedTasks());
+        }
+        resultVectors = configuration.isResultVectors();
+        spotCheckRate = configuration.getSpotCheckRate();
+        if(resultVerifier != null)
+        {
+            resultVerifier.setSpotCheckRate(spotCheckRate);
+        }
+        for(ServerHandle server : servers)
+        {
+            configureServer(server);
+        }
+    }
+
+    private void configureServer(ServerHandle server)
+    {
+        server.getWindow().setMaxSize(configuration.getMaxInFlightTasks());
+        server.getChunkSizer().setMultiplicativeDecrease(configuration.getChunkDecrease());
+        server.setRetryDelayMillis(configuration.getRetryDelayMillis());
+    }
+
+    // The server gets the next server number, and its latency histogram is published
+    private void addServer(OperationServerSharedInfo serverInfo, OperationServerInterface stub)
+    {
+        ServerHandle server = new ServerHandle(serverInfo, stub, maxInFlightTasks);
+        if(configuration != null)
+        {
+            configureServer(server);
+        }
+        servers.add(server);
+        metrics.addHistogram("server." + server.getName() + ".latencyNanos", server.getLatency());
+    }
+
+    private ServerHandle getServer(String serverName)
+    {
+        for(ServerHandle server : servers)
+        {
+            if(server.getName().equals(serverName))
+            {
+                return server;
             }
         }
+        return null;
+    }
 
-        long end = System.nanoTime();
-        System.out.println("Temps pour " + nbAvailableServers + " serveurs : " + (end - start) / 1E9 + " s");
-        System.out.println("Resultat final : " + totalResult.get() + ".");
+    /**
+     * Streams the operations file to the servers
+     * **/
+    void run(String operationsFilename, boolean secure)
+    {
+        long start = System.nanoTime();
+        JobScheduler jobs = new JobScheduler(false);
+        try
+        {
+            jobs.submit(new Job(operationsFilename, new File(OPERATIONS_DIRECTORY, operationsFilename), 1, null, null, null, checkpointing));
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+            return;
+        }
+        runJobs(jobs, secure);
+
+        if(jobs.getLastFinishedJob() != null)
+        {
+            totalResult.set(jobs.getLastFinishedJob().getResult());
+            System.out.println("Resultat final : " + totalResult.get() + ".");
+        }
+        if(firstDispatchTime != 0)
+        {
+            System.out.println("Temps avant le premier envoi : " + (firstDispatchTime - start) / 1E6 + " ms");
+        }
     }
 
     /**
-     * Called when secure parameter is false in application.properties
+     * Runs the jobs submitted in the directory, sharing the servers between them, until the process is stopped
      * **/
-    private void runInsecurely(String operationsFilename)
+    void serve(File jobsDirectory, boolean secure)
     {
-        //List<OperationTaskResult> opTasksResult = Collections.synchronizedList(new ArrayList<>());
-        ArrayList<String> operationsList = readOperationsFile(operationsFilename);
-        int nbAvailableServers = operationServerStubs.size();
+        JobScheduler jobs = new JobScheduler(true);
+        new JobDirectoryWatcher(jobsDirectory, new File(OPERATIONS_DIRECTORY), jobs, checkpointing).start();
+        runJobs(jobs, secure);
+    }
 
-        if(nbAvailableServers < 2)
+    void runJobs(JobScheduler jobs, boolean secure)
+    {
+        try
         {
-            System.err.println("Error: Non-secure mode requires at least two servers.");
-            return;
+            if(secure)
+            {
+                // Mode securise
+                runSecurely(jobs, null);
+            }
+            else if(verification == ResultVerifier.Mode.REPLICA)
+            {
+                // Mode non-securise, chaque tache calculee par deux serveurs
+                runInsecurely(jobs);
+            }
+            else
+            {
+                // Mode non-securise, resultats verifies par le repartiteur
+                resultVerifier = new ResultVerifier(verification, spotCheckRate);
+                runSecurely(jobs, resultVerifier);
+            }
+        }
+        finally
+        {
+            // Jobs that are not done keep their journal
+            jobs.close();
         }
+    }
 
-        Thread[] threads = new Thread[nbAvailableServers];
-        int fixedTaskSize = 2 * getMinimumCapacity(this.operationServersInfos);
+    /**
+     * Called when secure parameter is true in application.properties, or in non-secure mode with a
+     * verifier: each task is then calculated by one server and its results checked by the balancer
+     * **/
+    private void runSecurely(JobScheduler jobs, ResultVerifier verifier)
+    {
+        // One thread per task in flight, that is at most maxInFlightTasks per server
+        ExecutorService executor = Executors.newCachedThreadPool();
+        CompletionService<OperationTaskResult> completionService = new ExecutorCompletionService<>(executor);
+        // Tasks without an accepted result yet, a late copy of a completed task is not in the map
+        Map<PackedTask, HedgedTask> runningTasks = new IdentityHashMap<>();
+        int nbCopies = 0;
+        int nbCopiesWon = 0;
+        long lastDispatchTime = 0;
 
         long start = System.nanoTime();
-        while(!operationsList.isEmpty() || (isAnyThreadAlive(threads)))
+        try
         {
-            int threadA = -1;
-            int threadB = -1;
-            for (int i = 0; i < threads.length; i++)
+            while(!jobs.isDone() || !runningTasks.isEmpty())
             {
-                if (threads[i] == null || !threads[i].isAlive())
+                jobs.acceptNewJobs();
+                refreshMembership();
+                refreshConfiguration();
+                pingServers();
+
+                // Hand out a task to every free server
+                while(!jobs.isEmpty())
                 {
-                    if(threadA == -1)
+                    int serverNumber = schedulingStrategy.selectServer(servers);
+                    if(serverNumber == -1)
                     {
-                        threadA = i;
+                        // No server available
+                        break;
                     }
-                    else if(threadB == -1)
+
+                    PackedTask task = jobs.take(servers.get(serverNumber).getChunkSizer().nextSize(), getNbActiveServers(), costModel);
+                    if(task == null)
                     {
-                        threadB = i;
+                        // The jobs left failed to read their operations
+                        break;
                     }
+                    runningTasks.put(task, new HedgedTask(task, serverNumber));
+                    servers.get(serverNumber).getWindow().onTaskSubmitted(task.size());
+                    submitTask(completionService, serverNumber, task, verifier != null, verifier);
+                    lastDispatchTime = System.nanoTime();
                 }
-            }
 
-            if(threadA == -1 || threadB == -1 || operationsList.isEmpty())
-            {
-                // Not enough threads available
-                continue;
+                // Nothing left to send: idle servers compute a copy of the oldest tasks
+                if(hedging && jobs.isEmpty())
+                {
+                    nbCopies += hedgeRunningTasks(completionService, runningTasks, verifier);
+                }
+
+                if(jobs.isDone() && runningTasks.isEmpty())
+                {
+                    // The last job failed to read its operations, nothing is left to wait for
+                    continue;
+                }
+
+                // Sleep until a server frees up or the membership has to be checked
+                OperationTaskResult taskResult = waitForTaskResult(completionService);
+                if(taskResult == null)
+                {
+                    continue;
+                }
+                releaseServer(taskResult);
+
+                HedgedTask hedgedTask = runningTasks.get(taskResult.getOperations());
+                if(hedgedTask == null)
+                {
+                    // Copy of a task that another server already calculated
+                    continue;
+                }
+                switch (taskResult.getStatus())
+                {
+                    case FALSE_IDENTITY:
+                        System.exit(0);
+                        break;
+                    case ACCEPTED:
+                        if(verifier != null && !onResultVerified(taskResult))
+                        {
+                            // A wrong result is a failed copy: the task is calculated again
+                            onCopyFailed(jobs, runningTasks, hedgedTask, taskResult);
+                            break;
+                        }
+                        runningTasks.remove(hedgedTask.getTask());
+                        operationsCompleted.add(hedgedTask.getTask().size());
+                        jobs.onTaskCompleted(hedgedTask.getTask(), taskResult.getResult());
+                        if(taskResult.getServerNumber() != hedgedTask.getFirstServer())
+                        {
+                            nbCopiesWon++;
+                        }
+                        break;
+                    default:
+                        onCopyFailed(jobs, runningTasks, hedgedTask, taskResult);
+                        break;
+                }
             }
+        }
+        finally
+        {
+            // Also on an unexpected error: tasks and copies still running are abandoned
+            executor.shutdownNow();
+        }
 
-            ArrayList<String> task = operationsList;
-            if(fixedTaskSize <= operationsList.size())
+        long end = System.nanoTime();
+        tailNanos = lastDispatchTime == 0 ? 0 : end - lastDispatchTime;
+        printChunkSizers();
+        if(verifier != null)
+        {
+            for(ServerHandle server : servers)
             {
-                // Create a subtask
-                task = new ArrayList<>(operationsList.subList(0, fixedTaskSize));
+                System.out.println(server.getReputation());
             }
+            System.out.println(verifier);
+            System.out.println("Resultats en desaccord : " + verifier.getNbWrongResults());
+        }
+        System.out.println("Temps apres le dernier envoi : " + tailNanos / 1E9 + " s (" + nbCopies + " copies, "
+                + nbCopiesWon + " plus rapides que l'original)");
+        System.out.println("Temps pour " + servers.size() + " serveurs : " + (end - start) / 1E9 + " s");
+    }
 
-            final ArrayList<String> threadTask = new ArrayList<>(task);
+    /**
+     * Called when secure parameter is false in application.properties
+     * **/
+    private void runInsecurely(JobScheduler jobs)
+    {
+        if(servers.size() < 2)
+        {
+            System.err.println("Error: Non-secure mode requires at least two servers.");
+            return;
+        }
 
-            // Remove operations from 0 to task size
-            operationsList.subList(0, task.size()).clear();
+        // One thread per task in flight, that is at most maxInFlightTasks per server
+        ExecutorService executor = Executors.newCachedThreadPool();
+        CompletionService<OperationTaskResult> completionService = new ExecutorCompletionService<>(executor);
+        int nbPendingTasks = 0;
+        // Tasks waiting for a result, and those that need one more server to vote
+        Map<PackedTask, VotedTask> votedTasks = new IdentityHashMap<>();
+        ArrayDeque<VotedTask> tasksMissingVotes = new ArrayDeque<>();
+        int nbMismatches = 0;
 
-            final OperationServerInterface taskServerStubA = operationServerStubs.get(threadA);
-            final OperationServerInterface taskServerStubB = operationServerStubs.get(threadB);
-            threads[threadA] = new Thread(() ->
+        long start = System.nanoTime();
+        try
+        {
+            while(!jobs.isDone() || nbPendingTasks > 0 || !tasksMissingVotes.isEmpty())
             {
-                try
+                jobs.acceptNewJobs();
+                refreshMembership();
+                refreshConfiguration();
+                pingServers();
+
+                // Tie-breakers and failed replicas first: their task is already half done
+                Iterator<VotedTask> votedTaskIterator = tasksMissingVotes.iterator();
+                while(votedTaskIterator.hasNext())
+                {
+                    VotedTask votedTask = votedTaskIterator.next();
+                    if(!votedTask.hasPendingVotes() && !canVote(votedTask))
+                    {
+                        // Every active server voted without a majority
+                        votedTask.startOver();
+                        votedTasks.put(votedTask.getRoundTask(), votedTask);
+                    }
+                    int serverNumber;
+                    while(votedTask.getNbMissingVotes() > 0 && (serverNumber = getVotingServer(votedTask)) != -1)
+                    {
+                        servers.get(serverNumber).getWindow().onTaskSubmitted(votedTask.getRoundTask().size());
+                        nbPendingTasks++;
+                        votedTask.onVoteRequested(serverNumber);
+                        submitTask(completionService, serverNumber, votedTask.getRoundTask(), resultVectors, null);
+                    }
+                    if(votedTask.getNbMissingVotes() == 0)
+                    {
+                        votedTaskIterator.remove();
+                    }
+                }
+
+                // Hand out a new task to the most trusted pairs of free servers
+                while(!jobs.isEmpty())
                 {
-                    int resultA = taskServerStubA.calculateResult(LoadBalancer.username, this.password, threadTask);
-                    int resultB = taskServerStubB.calculateResult(LoadBalancer.username, this.password, threadTask);
+                    int[] votingPair = getVotingPair();
+                    if(votingPair == null)
+                    {
+                        // Not enough servers available
+                        break;
+                    }
+                    int serverA = votingPair[0];
+                    int serverB = votingPair[1];
 
-                    if(resultA == resultB)
+                    // Both servers compute the same task, so it must suit the most conservative sizer
+                    int taskSize = Math.min(servers.get(serverA).getChunkSizer().nextSize(), servers.get(serverB).getChunkSizer().nextSize());
+                    // Each task is calculated twice, so there are half as many servers to spread the tail over
+                    PackedTask task = jobs.take(taskSize, getNbActiveServers() / 2, costModel);
+                    if(task == null)
                     {
-                        totalResult.getAndAdd(resultA);
+                        // The jobs left failed to read their operations
+                        break;
                     }
-                    else
+                    VotedTask votedTask = new VotedTask(task, resultVectors);
+                    votedTasks.put(votedTask.getTask(), votedTask);
+                    for (int serverNumber : new int[] { serverA, serverB })
                     {
-                        operationsList.addAll(threadTask);
+                        servers.get(serverNumber).getWindow().onTaskSubmitted(votedTask.getTask().size());
+                        nbPendingTasks++;
+                        votedTask.onVoteRequested(serverNumber);
+                        submitTask(completionService, serverNumber, votedTask.getTask(), resultVectors, null);
                     }
                 }
-                catch (RemoteException | TaskRejectedException e)
+
+                if(jobs.isDone() && nbPendingTasks == 0 && tasksMissingVotes.isEmpty())
                 {
-                    operationsList.addAll(threadTask);
-                    //System.err.println("Error: " + e.getMessage());
+                    // The last job failed to read its operations, nothing is left to wait for
+                    continue;
                 }
-                catch (FalseIdentityException e)
+
+                // Sleep until a server frees up or the membership has to be checked
+                OperationTaskResult taskResult = waitForTaskResult(completionService);
+                if(taskResult == null)
                 {
-                    System.err.println("Error: " + e.getMessage());
-                    System.exit(0);
+                    continue;
                 }
-            });
-            threads[threadA].start();
+                nbPendingTasks--;
+                releaseServer(taskResult);
+
+                VotedTask votedTask = votedTasks.get(taskResult.getOperations());
+                if(votedTask == null)
+                {
+                    // Late replica of a task that was already agreed on
+                    continue;
+                }
+                switch (taskResult.getStatus())
+                {
+                    case ACCEPTED:
+                        int nbMissingVotes = votedTask.getNbMissingVotes();
+                        Integer agreedResult = votedTask.onVoteReceived(taskResult.getServerNumber(), taskResult.getResults());
+                        if(agreedResult != null)
+                        {
+                            updateReputations(votedTask);
+                            operationsCompleted.add(votedTask.getTask().size());
+                            jobs.onTaskCompleted(votedTask.getTask(), agreedResult);
+                            votedTasks.keySet().removeAll(votedTask.getRoundTasks());
+                            tasksMissingVotes.remove(votedTask);
+                        }
+                        else if(votedTask.getNbMissingVotes() > nbMissingVotes)
+                        {
+                            // The results disagree, a tie-breaker was requested for the operations in disagreement
+                            nbMismatches++;
+                            mismatches.increment();
+                            nbReverifiedOperations += votedTask.getRoundTask().size();
+                            votedTasks.put(votedTask.getRoundTask(), votedTask);
+                            if(!tasksMissingVotes.contains(votedTask))
+                            {
+                                tasksMissingVotes.add(votedTask);
+                            }
+                        }
+                        break;
+                    case FALSE_IDENTITY:
+                        System.exit(0);
+                        break;
+                    default:
+                        votedTask.onVoteFailed(taskResult.getServerNumber());
+                        int chunkSize = servers.get(taskResult.getServerNumber()).getChunkSizer().nextSize();
+                        if(!votedTask.hasPendingVotes() && votedTask.getRoundTask().size() > chunkSize)
+                        {
+                            // The task became too large for the servers: drop its votes, its operations are split again
+                            votedTasks.keySet().removeAll(votedTask.getRoundTasks());
+                            tasksMissingVotes.remove(votedTask);
+                            jobs.putBack(votedTask.getTask());
+                        }
+                        else if(!tasksMissingVotes.contains(votedTask))
+                        {
+                            tasksMissingVotes.add(votedTask);
+                        }
+                        break;
+                }
+            }
         }
+        finally
+        {
+            // Also on an unexpected error: tasks and copies still running are abandoned
+            executor.shutdownNow();
+        }
+
+        long end = System.nanoTime();
+        printChunkSizers();
+        for(ServerHandle server : servers)
+        {
+            System.out.println(server.getReputation());
+        }
+        System.out.println("Resultats en desaccord : " + nbMismatches);
+        System.out.println("Operations reverifiees : " + nbReverifiedOperations);
+        System.out.println("Temps pour " + servers.size() + " serveurs : " + (end - start) / 1E9 + " s");
+    }
+
+
+
+    int getTotalResult()
+    {
+        return totalResult.get();
+    }
+
+    long getTailNanos()
+    {
+        return tailNanos;
+    }
+
+    void setHedging(boolean hedging)
+    {
+        this.hedging = hedging;
+    }
 
-        // Wait for threads to terminate
-        for (Thread thread : threads)
+    void setSchedulingStrategy(SchedulingStrategy schedulingStrategy)
+    {
+        this.schedulingStrategy = schedulingStrategy;
+    }
+
+    void setCheckpointing(boolean checkpointing)
+    {
+        this.checkpointing = checkpointing;
+    }
+
+    void setCostBasedTasks(boolean costBasedTasks)
+    {
+        this.costModel = costBasedTasks ? new CostModel() : null;
+    }
+
+    void setResultVectors(boolean resultVectors)
+    {
+        this.resultVectors = resultVectors;
+    }
+
+    void setVerification(ResultVerifier.Mode verification)
+    {
+        this.verification = verification;
+    }
+
+    long getNbReverifiedOperations()
+    {
+        return nbReverifiedOperations;
+    }
+
+    /**** UTILITY FUNCTIONS ****************************************************************/
+    // Sends the task to the server in a worker thread, the outcome is queued in the completion service.
+    // perOperation asks the server for the result of each operation instead of their sum. A non-null verifier
+    // then checks these results in the worker thread
+    private void submitTask(CompletionService<OperationTaskResult> completionService, int serverNumber, PackedTask task,
+                            boolean perOperation, ResultVerifier verifier)
+    {
+        final OperationServerInterface taskServerStub = servers.get(serverNumber).getStub();
+        final ChunkSizer chunkSizer = servers.get(serverNumber).getChunkSizer();
+        final InFlightWindow window = servers.get(serverNumber).getWindow();
+        final Histogram latency = servers.get(serverNumber).getLatency();
+        final int nbInFlight = window.getNbInFlight();
+        final boolean verifyFully = !servers.get(serverNumber).getReputation().isTrusted();
+        tasksInFlight.increment();
+        if(firstDispatchTime == 0)
+        {
+            firstDispatchTime = System.nanoTime();
+        }
+        completionService.submit(() ->
         {
             try
             {
-                if(thread != null)
+                int[] results = calculateResult(taskServerStub, chunkSizer, window, latency, nbInFlight, task, perOperation);
+                // Recalculated here rather than on the dispatcher thread, which keeps handing out tasks
+                boolean verified = verifier == null || verifier.verify(task, results, verifyFully);
+                return new OperationTaskResult(task, results, serverNumber, verified);
+            }
+            catch (TaskRejectedException e)
+            {
+                tasksRejected.increment();
+                if(isBusy(e, task))
                 {
-                    thread.join();
+                    return new OperationTaskResult(task, serverNumber, e.getEstimatedWaitMillis());
                 }
+                return new OperationTaskResult(task, 0, OperationTaskResult.Status.FAILED, serverNumber);
+            }
+            catch (RemoteException e)
+            {
+                //System.err.println("Error: " + e.getMessage());
+                tasksUnreachable.increment();
+                return new OperationTaskResult(task, 0, OperationTaskResult.Status.UNREACHABLE, serverNumber);
             }
-            catch (InterruptedException e)
+            catch (FalseIdentityException e)
             {
                 System.err.println("Error: " + e.getMessage());
+                falseIdentities.increment();
+                return new OperationTaskResult(task, 0, OperationTaskResult.Status.FALSE_IDENTITY, serverNumber);
             }
-        }
+        });
+    }
 
-        long end = System.nanoTime();
-        System.out.println("Temps pour " + nbAvailableServers + " serveurs : " + (end - start) / 1E9 + " s");
-        System.out.println("Resultat final : " + totalResult.get() + ".");
+    // The server has one task less in flight, and is left aside for a while if it could not be reached
+    private void releaseServer(OperationTaskResult taskResult)
+    {
+        ServerHandle server = servers.get(taskResult.getServerNumber());
+        server.getWindow().onTaskCompleted(taskResult.getOperations().size());
+        tasksInFlight.decrement();
+        if(taskResult.getStatus() == OperationTaskResult.Status.UNREACHABLE)
+        {
+            server.onUnreachable();
+        }
+        else if(taskResult.getStatus() == OperationTaskResult.Status.BUSY)
+        {
+            server.onBusy(taskResult.getRetryDelayMillis());
+        }
     }
 
+    // The copy of the task gave no result, the task is sent again once no copy is left running
+    private void onCopyFailed(JobScheduler jobs, Map<PackedTask, HedgedTask> runningTasks, HedgedTask hedgedTask,
+                              OperationTaskResult taskResult)
+    {
+        hedgedTask.onCopyFailed(taskResult.getServerNumber());
+        if(hedgedTask.getNbCopies() == 0)
+        {
+            runningTasks.remove(hedgedTask.getTask());
+            jobs.putBack(hedgedTask.getTask());
+        }
+    }
 
+    // True if an active server, free or not, has not voted on the task yet
+    private boolean canVote(VotedTask votedTask)
+    {
+        for (int i = 0; i < servers.size(); i++)
+        {
+            if (servers.get(i).isActive() && !votedTask.wasAsked(i))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
 
-    /**** UTILITY FUNCTIONS ****************************************************************/
-    // Returns true if any of the threads passed in parameter is alive
-    private boolean isAnyThreadAlive(Thread[] threads)
+    // Sends a copy of the oldest running task to each idle server, returns the number of copies sent
+    private int hedgeRunningTasks(CompletionService<OperationTaskResult> completionService, Map<PackedTask, HedgedTask> runningTasks,
+                                  ResultVerifier verifier)
     {
-        boolean aThreadIsAlive = false;
-        for (Thread thread : threads)
+        int nbCopies = 0;
+        for (int i = 0; i < servers.size(); i++)
         {
-            if (thread != null && thread.isAlive())
+            ServerHandle server = servers.get(i);
+            if (!server.isAvailable() || server.getWindow().getNbInFlight() > 0)
+            {
+                continue;
+            }
+
+            HedgedTask oldestTask = null;
+            for (HedgedTask hedgedTask : runningTasks.values())
+            {
+                if (hedgedTask.getNbCopies() < maxCopies && !hedgedTask.isOnServer(i)
+                        && (oldestTask == null || hedgedTask.getSubmitTime() - oldestTask.getSubmitTime() < 0))
+                {
+                    oldestTask = hedgedTask;
+                }
+            }
+            if (oldestTask == null)
             {
-                aThreadIsAlive = true;
                 break;
             }
+            oldestTask.onCopySubmitted(i);
+            server.getWindow().onTaskSubmitted(oldestTask.getTask().size());
+            submitTask(completionService, i, oldestTask.getTask(), verifier != null, verifier);
+            nbCopies++;
         }
-        return aThreadIsAlive;
+        return nbCopies;
     }
 
-    // Returns the indice of the server with the highest capacity
-    private Integer getServerWithBiggestCapacity(int[] serverCapacities)
+    // Returns the most trusted free server that has not voted on the task yet, or -1
+    private int getVotingServer(VotedTask votedTask)
     {
-        Integer biggestCapacity = 0;
-        boolean found = false;
-        for(int i = 0; i < serverCapacities.length; i++)
+        int votingServer = -1;
+        for (int i = 0; i < servers.size(); i++)
         {
-            if(serverCapacities[i] > biggestCapacity)
+            if (servers.get(i).isAvailable() && !votedTask.wasAsked(i)
+                    && (votingServer == -1 || getScore(i) > getScore(votingServer)))
             {
-                biggestCapacity = i;
-                found = true;
+                votingServer = i;
             }
         }
-        if (found)
+        return votingServer;
+    }
+
+    // Returns the two most trusted free servers, leaving quarantined servers out while at least two others remain, or null
+    private int[] getVotingPair()
+    {
+        int nbTrustedServers = 0;
+        for (ServerHandle server : servers)
         {
-            return biggestCapacity;
+            if (server.isActive() && !server.getReputation().isQuarantined())
+            {
+                nbTrustedServers++;
+            }
         }
-        else
+
+        int bestServer = -1;
+        int secondServer = -1;
+        for (int i = 0; i < servers.size(); i++)
         {
-            return null;
+            if (!servers.get(i).isAvailable() || (nbTrustedServers >= 2 && servers.get(i).getReputation().isQuarantined()))
+            {
+                continue;
+            }
+            if (bestServer == -1 || getScore(i) > getScore(bestServer))
+            {
+                secondServer = bestServer;
+                bestServer = i;
+            }
+            else if (secondServer == -1 || getScore(i) > getScore(secondServer))
+            {
+                secondServer = i;
+            }
         }
+        return secondServer == -1 ? null : new int[] { bestServer, secondServer };
     }
 
-    // Returns the minimum capacity in the server list
-    private int getMinimumCapacity(ArrayList<OperationServerSharedInfo> serversInfoList)
+    private double getScore(int serverNumber)
     {
-        int minCapacity = serversInfoList.get(0).getCapacity();
-        for(int i = 1; i < serversInfoList.size(); i++)
+        return servers.get(serverNumber).getReputation().getScore();
+    }
+
+    // Servers who voted for the agreed results gain reputation, the others lose some
+    private void updateReputations(VotedTask votedTask)
+    {
+        for (int i = 0; i < votedTask.getVoters().size(); i++)
         {
-            if(serversInfoList.get(i).getCapacity() < minCapacity)
+            ServerReputation serverReputation = servers.get(votedTask.getVoters().get(i)).getReputation();
+            if (votedTask.hasVotedRight(i))
+            {
+                serverReputation.onAgreement();
+            }
+            else
             {
-                minCapacity = serversInfoList.get(i).getCapacity();
+                serverReputation.onDisagreement();
             }
         }
-        return minCapacity;
     }
 
-    // Returns a list of operations read in a file
-    private ArrayList<String> readOperationsFile(String operationsFilename)
+    // The reputation of the server follows the outcome of the check made in the task thread
+    private boolean onResultVerified(OperationTaskResult taskResult)
     {
-        ArrayList<String> allOperations = new ArrayList<>();
-        File operationsFile = new File(OPERATIONS_DIRECTORY + "/" + operationsFilename);
+        ServerReputation reputation = servers.get(taskResult.getServerNumber()).getReputation();
+        if(taskResult.isVerified())
+        {
+            reputation.onAgreement();
+            return true;
+        }
+        reputation.onDisagreement();
+        mismatches.increment();
+        return false;
+    }
 
+    // Sends a task to a server and feeds the outcome to the server's chunk sizer, window and latency histogram.
+    // Returns the result of each operation, or only their sum if perOperation is false
+    private int[] calculateResult(OperationServerInterface serverStub, ChunkSizer chunkSizer, InFlightWindow window,
+                                  Histogram latency, int nbInFlight, PackedTask task, boolean perOperation)
+            throws RemoteException, TaskRejectedException, FalseIdentityException
+    {
+        long start = System.nanoTime();
         try
         {
-            BufferedReader in = new BufferedReader(new FileReader(operationsFile));
-            String readedOperation = "";
-            while ((readedOperation = in.readLine()) != null)
+            int[] result = perOperation ? serverStub.calculatePackedResults(getSessionToken(), task)
+                    : new int[] { serverStub.calculatePackedResult(getSessionToken(), task) };
+            long elapsed = System.nanoTime() - start;
+            latency.record(elapsed);
+            chunkSizer.onAccepted(task.size());
+            window.onTaskAccepted(task.size(), elapsed, nbInFlight);
+            CostModel taskCostModel = costModel;
+            if(taskCostModel != null)
             {
-                allOperations.add(readedOperation);
+                taskCostModel.onTaskAccepted(task, window.getServiceNanos(elapsed, nbInFlight));
             }
+            return result;
         }
-        catch (IOException e)
+        catch (TaskRejectedException e)
         {
-            System.err.println("Error: " + e.getMessage());
+            long elapsed = System.nanoTime() - start;
+            latency.record(elapsed);
+            if(!isBusy(e, task))
+            {
+                chunkSizer.onRejected(task.size());
+            }
+            throw e;
         }
+    }
 
-        return allOperations;
+    // True if the server's queue was full, rather than the task too large for the server
+    private static boolean isBusy(TaskRejectedException e, PackedTask task)
+    {
+        return e.hasHints() && task.size() <= e.getMaxOperations();
+    }
+
+    // Returns the session token, opening a new session when the current one is halfway through its lifetime
+    private synchronized String getSessionToken() throws RemoteException, FalseIdentityException
+    {
+        if(sessionToken == null || System.nanoTime() - sessionRenewalTime >= 0)
+        {
+            sessionToken = authenticationServiceStub.openSession(LoadBalancer.username, this.password);
+            if(sessionToken == null)
+            {
+                throw new FalseIdentityException();
+            }
+            sessionRenewalTime = System.nanoTime() + sessionToken.getLifetimeMillis() / 2 * 1000000;
+        }
+        return sessionToken.getValue();
+    }
+
+    // Prints the state reached by the chunk sizer and the window of every server, and the cost model
+    private void printChunkSizers()
+    {
+        for(ServerHandle server : servers)
+        {
+            InFlightWindow window = server.getWindow();
+            System.out.println(server.getChunkSizer() + ", window " + window.getSize(server.getChunkSizer().nextSize())
+                    + " (" + window + ")");
+        }
+        if(costModel != null)
+        {
+            System.out.println(costModel);
+        }
+    }
+
+    private int getNbActiveServers()
+    {
+        int nbActiveServers = 0;
+        for(ServerHandle server : servers)
+        {
+            if(server.isActive())
+            {
+                nbActiveServers++;
+            }
+        }
+        return nbActiveServers;
+    }
+
+    /**
+     * Blocks until a task is completed by a server. Returns null when a server set aside (busy or
+     * unreachable) can be used again, or when the membership has to be checked. Never waits without
+     * a deadline when no task is in flight: no result would come.
+     * **/
+    private OperationTaskResult waitForTaskResult(CompletionService<OperationTaskResult> completionService)
+    {
+        long timeoutNanos = Long.MAX_VALUE;
+        boolean tasksPending = false;
+        for(ServerHandle server : servers)
+        {
+            tasksPending |= server.getWindow().getNbInFlight() > 0;
+            long retryNanos = server.getRemainingRetryNanos();
+            if(server.isActive() && retryNanos > 0)
+            {
+                timeoutNanos = Math.min(timeoutNanos, retryNanos);
+            }
+        }
+        if(liveMembership)
+        {
+            timeoutNanos = Math.min(timeoutNanos, Math.max(0, nextMembershipPoll - System.nanoTime()));
+        }
+        try
+        {
+            if(timeoutNanos == Long.MAX_VALUE)
+            {
+                if(!tasksPending)
+                {
+                    System.err.println("Error: No server can calculate the remaining tasks.");
+                    System.exit(1);
+                }
+                return completionService.take().get();
+            }
+            Future<OperationTaskResult> completedTask = completionService.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+            return completedTask == null ? null : completedTask.get();
+        }
+        catch (InterruptedException | ExecutionException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
     }
 
 }
\ No newline at end of file
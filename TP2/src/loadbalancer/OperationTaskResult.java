@@ -1,30 +1,70 @@
 package loadbalancer;
 
-import shared.OperationServerSharedInfo;
-
-import java.util.ArrayList;
+import shared.PackedTask;
 
 public class OperationTaskResult {
-    private ArrayList<String> operations;
+
+    // BUSY: the server's queue was full, the task can be sent elsewhere and the server tried again later
+    public enum Status { ACCEPTED, FAILED, BUSY, UNREACHABLE, FALSE_IDENTITY }
+
+    private PackedTask operations;
     private int result;
-    //private OperationServerSharedInfo serverInfo; // server who calculated the result
+    private int[] results; // ACCEPTED: result of each operation, or only the sum of the task
+    private Status status;
+    private int serverNumber; // server who calculated the result
+    private long retryDelayMillis = 0; // BUSY: estimated wait given by the server
+    private boolean verified = true; // ACCEPTED: false if the balancer found a wrong result
 
-    OperationTaskResult(ArrayList<String> operations, int result/*, OperationServerSharedInfo serverInfo*/)
+    OperationTaskResult(PackedTask operations, int result, Status status, int serverNumber)
     {
         this.operations = operations;
         this.result = result;
-        //this.serverInfo = serverInfo;
+        this.status = status;
+        this.serverNumber = serverNumber;
+    }
+
+    OperationTaskResult(PackedTask operations, int[] results, int serverNumber, boolean verified)
+    {
+        this(operations, 0, Status.ACCEPTED, serverNumber);
+        for(int operationResult : results)
+        {
+            this.result += operationResult;
+        }
+        this.results = results;
+        this.verified = verified;
+    }
+
+    OperationTaskResult(PackedTask operations, int serverNumber, long retryDelayMillis)
+    {
+        this(operations, 0, Status.BUSY, serverNumber);
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    public long getRetryDelayMillis() {
+        return retryDelayMillis;
     }
 
     public int getResult() {
         return result;
     }
 
-    public ArrayList<String> getOperations() {
+    public int[] getResults() {
+        return results;
+    }
+
+    public PackedTask getOperations() {
         return operations;
     }
 
-    /*public OperationServerSharedInfo getServerInfo() {
-        return serverInfo;
-    }*/
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getServerNumber() {
+        return serverNumber;
+    }
+
+    public boolean isVerified() {
+        return verified;
+    }
 }
@@ -0,0 +1,270 @@
+package loadbalancer;
+
+import shared.PackedTask;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Lecture en continu d'un fichier d'operations projete en memoire (memory-mapped).
+ *
+ * Les taches sont produites au fur et a mesure que le repartiteur les demande, directement
+ * a partir des octets du fichier : ni le fichier ni ses lignes ne sont charges sur le tas.
+ * Le fichier est projete par fenetres de MAPPED_WINDOW_BYTES octets.
+ * Les operations sont numerotees dans l'ordre du fichier (lignes inconnues exclues) : une tache
+ * connait le numero de sa premiere operation, et les intervalles deja calcules lors d'une
+ * execution precedente (CheckpointJournal) sont sautes. Le lecteur avance toujours jusqu'a la
+ * prochaine operation a rendre : hasNext est faux des qu'il ne reste que des lignes vides,
+ * inconnues ou deja calculees.
+ * **/
+public class OperationsReader implements Closeable {
+
+    private static final long MAPPED_WINDOW_BYTES = 64L * 1024 * 1024;
+    private static final byte[] PELL = "pell".getBytes();
+    private static final byte[] PRIME = "prime".getBytes();
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long fileSize;
+
+    private MappedByteBuffer window;
+    private long windowStart = 0;
+    private long windowEnd = 0;
+    private long position = 0;
+    private long nextOperation = 0; // index of the next operation in the file
+    private long skippedBytes = 0; // bytes of the lines read without giving an operation: unknown lines, skipped ranges
+    private NavigableMap<Long, Long> skippedRanges = new TreeMap<>(); // first operation -> end (exclusive) of ranges to skip
+
+    public OperationsReader(File operationsFile) throws IOException
+    {
+        this.file = new RandomAccessFile(operationsFile, "r");
+        this.channel = file.getChannel();
+        this.fileSize = channel.size();
+        skipUnusedLines();
+    }
+
+    public boolean hasNext()
+    {
+        return position < fileSize;
+    }
+
+    // The operations in these ranges are read but not returned, ranges must not overlap
+    public void skip(NavigableMap<Long, Long> completedRanges) throws IOException
+    {
+        this.skippedRanges = completedRanges;
+        skipUnusedLines();
+    }
+
+    // Bytes of the lines of the operations returned so far
+    public long getReadBytes() {
+        return position - skippedBytes;
+    }
+
+    // Estimated bytes of the operations left to return: the rest of the file without the skipped ranges ahead
+    public long getRemainingBytes()
+    {
+        long nbSkippedAhead = 0;
+        for(Map.Entry<Long, Long> skippedRange : skippedRanges.entrySet())
+        {
+            nbSkippedAhead += Math.max(0, skippedRange.getValue() - Math.max(skippedRange.getKey(), nextOperation));
+        }
+        double bytesPerOperation = nextOperation == 0 ? 0 : (double) position / nextOperation;
+        return Math.max(0, fileSize - position - (long) (nbSkippedAhead * bytesPerOperation));
+    }
+
+    // Parses at most maxSize consecutive operations from the current position, skipped ranges excluded
+    public PackedTask next(int maxSize) throws IOException
+    {
+        return next(maxSize, Double.POSITIVE_INFINITY, null);
+    }
+
+    // Same, and stops after the operation whose estimated cost reaches maxCost. Returns null if no operation is left
+    public PackedTask next(int maxSize, double maxCost, CostModel costModel) throws IOException
+    {
+        byte[] opcodes = new byte[maxSize];
+        int[] operands = new int[maxSize];
+        int nbOperations = 0;
+        int limit = maxSize;
+        long firstOperation = nextOperation;
+        double cost = 0;
+
+        while(nbOperations < limit && position < fileSize)
+        {
+            long lineStart = position;
+            byte opcode = -1;
+            if(matches(PELL))
+            {
+                opcode = PackedTask.OP_PELL;
+            }
+            else if(matches(PRIME))
+            {
+                opcode = PackedTask.OP_PRIME;
+            }
+            int operand = parseOperand(opcode != -1);
+            if(opcode == PackedTask.OP_PELL && operand < 0)
+            {
+                // The reference engine never returns, neither the servers nor ResultVerifier could calculate it
+                throw new IOException("pell " + operand + " before byte " + position + " does not terminate.");
+            }
+            skipLine();
+
+            // Unknown operations are ignored, as in PackedTask.parse
+            if(opcode != -1)
+            {
+                long operation = nextOperation++;
+                if(nbOperations == 0)
+                {
+                    Map.Entry<Long, Long> skippedRange = skippedRanges.floorEntry(operation);
+                    if(skippedRange != null && operation < skippedRange.getValue())
+                    {
+                        skippedBytes += position - lineStart;
+                        continue;
+                    }
+                    // The task stops before the next skipped range so that its operations are consecutive
+                    firstOperation = operation;
+                    Long nextSkippedRange = skippedRanges.higherKey(operation);
+                    if(nextSkippedRange != null)
+                    {
+                        limit = (int) Math.min(maxSize, nextSkippedRange - operation);
+                    }
+                }
+                opcodes[nbOperations] = opcode;
+                operands[nbOperations++] = operand;
+                if(costModel != null)
+                {
+                    cost += costModel.estimate(opcode, operand);
+                    if(cost >= maxCost)
+                    {
+                        limit = nbOperations;
+                    }
+                }
+            }
+            else
+            {
+                skippedBytes += position - lineStart;
+            }
+        }
+        skipUnusedLines();
+
+        if(nbOperations == 0)
+        {
+            return null;
+        }
+        PackedTask task = new PackedTask(opcodes, operands);
+        task.setFirstOperation(firstOperation);
+        return nbOperations == maxSize ? task : task.slice(0, nbOperations);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        window = null;
+        channel.close();
+        file.close();
+    }
+
+    private byte byteAt(long bytePosition) throws IOException
+    {
+        if(bytePosition < windowStart || bytePosition >= windowEnd)
+        {
+            windowStart = bytePosition;
+            windowEnd = Math.min(fileSize, bytePosition + MAPPED_WINDOW_BYTES);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+        }
+        return window.get((int) (bytePosition - windowStart));
+    }
+
+    // Moves past the lines that give no operation, up to the next operation to return or the end of the file
+    private void skipUnusedLines() throws IOException
+    {
+        while(position < fileSize)
+        {
+            long lineStart = position;
+            boolean knownOperation = matches(PELL) || matches(PRIME);
+            position = lineStart;
+            if(knownOperation)
+            {
+                Map.Entry<Long, Long> skippedRange = skippedRanges.floorEntry(nextOperation);
+                if(skippedRange == null || nextOperation >= skippedRange.getValue())
+                {
+                    return;
+                }
+                nextOperation++;
+            }
+            skipLine();
+            skippedBytes += position - lineStart;
+        }
+    }
+
+    // Consumes the operation name followed by a space if it is the expected one
+    private boolean matches(byte[] name) throws IOException
+    {
+        if(position + name.length >= fileSize)
+        {
+            return false;
+        }
+        for(int i = 0; i < name.length; i++)
+        {
+            if(byteAt(position + i) != name[i])
+            {
+                return false;
+            }
+        }
+        if(byteAt(position + name.length) != ' ')
+        {
+            return false;
+        }
+        position += name.length + 1;
+        return true;
+    }
+
+    private int parseOperand(boolean knownOperation) throws IOException
+    {
+        if(!knownOperation)
+        {
+            return 0;
+        }
+
+        boolean negative = position < fileSize && byteAt(position) == '-';
+        if(negative)
+        {
+            position++;
+        }
+
+        int operand = 0;
+        boolean hasDigits = false;
+        while(position < fileSize)
+        {
+            byte digit = byteAt(position);
+            if(digit < '0' || digit > '9')
+            {
+                break;
+            }
+            operand = operand * 10 + (digit - '0');
+            hasDigits = true;
+            position++;
+        }
+
+        if(!hasDigits)
+        {
+            throw new IOException("Expected an operand at byte " + position);
+        }
+        return negative ? -operand : operand;
+    }
+
+    // Moves the position to the beginning of the next line
+    private void skipLine() throws IOException
+    {
+        while(position < fileSize && byteAt(position++) != '\n')
+        {
+            // Ignore the rest of the line, including '\r'
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package loadbalancer;
+
+import shared.PackedTask;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * Operations qui restent a calculer : la suite du fichier, lue a la demande, plus les taches
+ * qui ont echoue et qui doivent etre renvoyees. Utilise seulement par le fil du repartiteur.
+ *
+ * Avec un CostModel, une tache s'arrete quand son cout estime atteint celui d'une tache moyenne
+ * de maxSize operations. Vers la fin, le cout d'une tache est aussi borne par le cout restant
+ * divise par TAIL_DIVISOR * nombre de serveurs : les taches decroissent et les dernieres sont courtes.
+ * Les taches partent dans l'ordre du fichier, sans tri par cout (pas de LPT) : formees par cout, elles
+ * coutent deja a peu pres autant les unes que les autres.
+ * **/
+public class PendingOperations {
+
+    private static final int TAIL_DIVISOR = 2;
+
+    private final OperationsReader operationsReader;
+    private final ArrayDeque<PackedTask> failedTasks = new ArrayDeque<>();
+    private final double[] readUnits = new double[2]; // work of the operations read from the file, by opcode
+    private long nbReadOperations = 0;
+
+    public PendingOperations(OperationsReader operationsReader)
+    {
+        this.operationsReader = operationsReader;
+    }
+
+    public boolean isEmpty()
+    {
+        return failedTasks.isEmpty() && !operationsReader.hasNext();
+    }
+
+    // Removes at most maxSize operations, failed tasks first. Tasks are formed by estimated cost for
+    // nbServers servers, by count only if costModel is null
+    public PackedTask take(int maxSize, int nbServers, CostModel costModel) throws IOException
+    {
+        double maxCost = getMaxCost(maxSize, nbServers, costModel);
+        PackedTask failedTask = failedTasks.poll();
+        if(failedTask != null)
+        {
+            int size = costModel == null ? Math.min(maxSize, failedTask.size()) : costModel.getPrefixSize(failedTask, maxSize, maxCost);
+            if(failedTask.size() <= size)
+            {
+                return failedTask;
+            }
+            failedTasks.push(failedTask.slice(size, failedTask.size()));
+            return failedTask.slice(0, size);
+        }
+
+        PackedTask task = operationsReader.next(maxSize, maxCost, costModel);
+        CostModel.addUnits(task, 0, task.size(), readUnits);
+        nbReadOperations += task.size();
+        return task;
+    }
+
+    public void putBack(PackedTask task)
+    {
+        failedTasks.add(task);
+    }
+
+    private double getMaxCost(int maxSize, int nbServers, CostModel costModel)
+    {
+        if(costModel == null || nbReadOperations == 0)
+        {
+            return Double.POSITIVE_INFINITY;
+        }
+        double readCost = costModel.getCost(readUnits);
+        // Bytes of the operations read and of those left, skipped lines excluded from both like from readUnits
+        double remainingCost = readCost * operationsReader.getRemainingBytes() / Math.max(1, operationsReader.getReadBytes());
+        for(PackedTask failedTask : failedTasks)
+        {
+            remainingCost += costModel.estimate(failedTask);
+        }
+        return Math.min(maxSize * readCost / nbReadOperations, remainingCost / (TAIL_DIVISOR * Math.max(1, nbServers)));
+    }
+}
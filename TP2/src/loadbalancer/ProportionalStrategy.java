@@ -0,0 +1,40 @@
+package loadbalancer;
+
+import java.util.ArrayList;
+
+/**
+ * Charge proportionnelle a la capacite annoncee : le serveur disponible qui a le moins d'operations en
+ * vol par unite de capacite, le plus grand en cas d'egalite. Contrairement a LeastWorkStrategy, seule
+ * la capacite compte, pas le temps de calcul mesure.
+ * **/
+public class ProportionalStrategy implements SchedulingStrategy {
+
+    @Override
+    public int selectServer(ArrayList<ServerHandle> servers)
+    {
+        int selected = -1;
+        double selectedLoad = 0;
+        for(int i = 0; i < servers.size(); i++)
+        {
+            ServerHandle server = servers.get(i);
+            if(!server.isAvailable())
+            {
+                continue;
+            }
+            double load = (double) server.getWindow().getNbOperationsInFlight() / Math.max(1, server.getInfo().getCapacity());
+            if(selected == -1 || load < selectedLoad
+                    || (load == selectedLoad && server.getInfo().getCapacity() > servers.get(selected).getInfo().getCapacity()))
+            {
+                selected = i;
+                selectedLoad = load;
+            }
+        }
+        return selected;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "proportional";
+    }
+}
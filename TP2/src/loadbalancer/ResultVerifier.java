@@ -0,0 +1,107 @@
+package loadbalancer;
+
+import shared.FastOperations;
+import shared.PackedTask;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Verification des resultats par le repartiteur en mode non-securise.
+ *
+ * REPLICA : chaque tache est calculee par deux serveurs qui votent (VotedTask), pas de verification locale.
+ * SPOT et FULL : un seul serveur calcule la tache et renvoie le resultat de chaque operation ; le repartiteur
+ * le recalcule avec FastOperations (doublement pour pell, division d'essai jusqu'a la racine pour prime),
+ * quelques microsecondes contre des millisecondes pour le moteur de reference. FULL verifie toutes les
+ * operations, SPOT chacune avec la probabilite spotCheckRate (au moins une par tache), mais verifie tout
+ * pour un serveur qui n'est pas encore digne de confiance (ServerReputation.isTrusted).
+ * FULL est a choisir explicitement (verification=full), replica reste le mode par defaut.
+ * verify() est appele par les fils des taches, en parallele : le fil du repartiteur ne recalcule rien.
+ * **/
+public class ResultVerifier {
+
+    public enum Mode { REPLICA, SPOT, FULL }
+
+    private final Mode mode;
+    private volatile double spotCheckRate;
+    private final LongAdder nbVerifiedOperations = new LongAdder();
+    private final LongAdder nbWrongResults = new LongAdder(); // tasks refused, with at least one wrong operation
+
+    public ResultVerifier(Mode mode, double spotCheckRate)
+    {
+        this.mode = mode;
+        this.spotCheckRate = spotCheckRate;
+    }
+
+    // Returns the mode matching the name, or null if there is none
+    public static Mode getMode(String name)
+    {
+        for(Mode mode : Mode.values())
+        {
+            if(mode.name().equalsIgnoreCase(name))
+            {
+                return mode;
+            }
+        }
+        return null;
+    }
+
+    public void setSpotCheckRate(double spotCheckRate)
+    {
+        this.spotCheckRate = spotCheckRate;
+    }
+
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    public long getNbWrongResults()
+    {
+        return nbWrongResults.sum();
+    }
+
+    /**
+     * Checks the result of each operation of the task, all of them in FULL mode or if fully is true,
+     * a sample in SPOT mode. Returns false if a checked result is wrong.
+     * **/
+    public boolean verify(PackedTask task, int[] results, boolean fully)
+    {
+        if(results == null || results.length != task.size())
+        {
+            nbWrongResults.increment();
+            return false;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean checkAll = mode == Mode.FULL || fully;
+        int forcedCheck = random.nextInt(Math.max(1, task.size()));
+        double rate = spotCheckRate;
+        for(int i = 0; i < task.size(); i++)
+        {
+            if(checkAll || i == forcedCheck || random.nextDouble() < rate)
+            {
+                nbVerifiedOperations.increment();
+                if(results[i] != evaluate(task.getOpcodes()[i], task.getOperands()[i]))
+                {
+                    nbWrongResults.increment();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Result (modulo 4000) of the operation, as a server calculates it. OperationsReader rejects pell of a negative operand
+    private static int evaluate(byte opcode, int operand)
+    {
+        int result = opcode == PackedTask.OP_PELL ? FastOperations.pell(operand) : FastOperations.prime(operand);
+        return result % 4000;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Verification " + mode.name().toLowerCase() + " : " + nbVerifiedOperations.sum() + " operations verifiees, "
+                + nbWrongResults.sum() + " resultats faux";
+    }
+}
@@ -0,0 +1,67 @@
+package loadbalancer;
+
+import java.util.ArrayList;
+
+/**
+ * Choix du serveur qui recoit la prochaine tache en mode securise (et avec la verification par le repartiteur).
+ *
+ * Une strategie ne choisit que parmi les serveurs disponibles (ServerHandle.isAvailable) ; la taille
+ * de la tache reste donnee par le ChunkSizer du serveur choisi. Le nom de la strategie vient de la
+ * propriete scheduling et peut changer pendant un travail. En mode non-securise, la paire de serveurs
+ * qui votent reste choisie par reputation. Utilise seulement par le fil du repartiteur.
+ * **/
+public interface SchedulingStrategy {
+
+    String[] NAMES = { "biggest-capacity", "weighted-round-robin", "least-work", "two-choices", "proportional" };
+
+    // Returns the number of the server that gets the next task, or -1 if no server is available
+    int selectServer(ArrayList<ServerHandle> servers);
+
+    String getName();
+
+    // Returns a new strategy matching the name, or null if there is none
+    static SchedulingStrategy forName(String name)
+    {
+        switch (name.toLowerCase())
+        {
+            case "biggest-capacity":
+                return new BiggestCapacityStrategy();
+            case "weighted-round-robin":
+                return new WeightedRoundRobinStrategy();
+            case "least-work":
+                return new LeastWorkStrategy();
+            case "two-choices":
+                return new TwoChoicesStrategy();
+            case "proportional":
+                return new ProportionalStrategy();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Estimated time before the server is done with the operations in flight, from the service time
+     * measured by its InFlightWindow. Before its first accepted task, the server is assumed as slow as
+     * the slowest server measured.
+     * **/
+    static double getOutstandingNanos(ServerHandle server, double defaultNanosPerOperation)
+    {
+        double nanosPerOperation = server.getWindow().getNanosPerOperation();
+        if(nanosPerOperation < 0)
+        {
+            nanosPerOperation = defaultNanosPerOperation;
+        }
+        return server.getWindow().getNbOperationsInFlight() * nanosPerOperation;
+    }
+
+    // Slowest service time measured among the servers, 1 if none was measured yet
+    static double getSlowestNanosPerOperation(ArrayList<ServerHandle> servers)
+    {
+        double slowest = -1;
+        for(ServerHandle server : servers)
+        {
+            slowest = Math.max(slowest, server.getWindow().getNanosPerOperation());
+        }
+        return slowest < 0 ? 1 : slowest;
+    }
+}
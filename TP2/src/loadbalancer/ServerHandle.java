@@ -0,0 +1,136 @@
+package loadbalancer;
+
+import shared.Histogram;
+import shared.OperationServerInterface;
+import shared.OperationServerSharedInfo;
+
+/**
+ * Etat d'un serveur de calcul vu par le repartiteur.
+ *
+ * Un serveur garde son numero pour toute la duree du travail : s'il quitte la grappe, il est
+ * seulement marque inactif, et s'il revient il retrouve son ChunkSizer et sa reputation.
+ * Un serveur injoignable est mis de cote retryDelayMillis avant d'etre sollicite a nouveau,
+ * un serveur dont la file est pleine le temps d'attente qu'il a estime (borne par retryDelayMillis).
+ * Un serveur recoit des taches tant que sa fenetre (InFlightWindow) n'est pas pleine.
+ * Utilise uniquement par le thread du repartiteur, sauf le ChunkSizer, la fenetre et l'histogramme
+ * des temps de reponse.
+ * **/
+public class ServerHandle {
+
+    private static final long DEFAULT_RETRY_DELAY_MILLIS = 1000;
+    private static final long PING_INTERVAL_MILLIS = 10000;
+    private static final long MIN_BUSY_DELAY_MILLIS = 10;
+
+    private final String name;
+    private final ChunkSizer chunkSizer;
+    private final ServerReputation reputation;
+    private final InFlightWindow window;
+    private final Histogram latency = new Histogram(); // ns between sending a task and its result, rejections included
+    private OperationServerSharedInfo info;
+    private OperationServerInterface stub;
+    private boolean active = true;
+    private long retryDelayMillis = DEFAULT_RETRY_DELAY_MILLIS;
+    private long retryTime = System.nanoTime(); // System.nanoTime() before which the server is not used
+    private long nextPingTime = System.nanoTime(); // System.nanoTime() after which the round trip time is measured again
+
+    public ServerHandle(OperationServerSharedInfo info, OperationServerInterface stub, int maxInFlightTasks)
+    {
+        this.name = getName(info);
+        this.info = info;
+        this.stub = stub;
+        this.chunkSizer = new ChunkSizer(name, info.getCapacity());
+        this.reputation = new ServerReputation(name);
+        this.window = new InFlightWindow(maxInFlightTasks);
+    }
+
+    public static String getName(OperationServerSharedInfo info)
+    {
+        return info.getIpAddress() + ":" + info.getPort();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public OperationServerSharedInfo getInfo() {
+        return info;
+    }
+
+    public OperationServerInterface getStub() {
+        return stub;
+    }
+
+    public ChunkSizer getChunkSizer() {
+        return chunkSizer;
+    }
+
+    public ServerReputation getReputation() {
+        return reputation;
+    }
+
+    public InFlightWindow getWindow() {
+        return window;
+    }
+
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    public void setRetryDelayMillis(long retryDelayMillis)
+    {
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    // True if a task can be sent to the server right now
+    public boolean isAvailable()
+    {
+        return active && !window.isFull(chunkSizer.nextSize()) && System.nanoTime() - retryTime >= 0;
+    }
+
+    // Nanoseconds before a server set aside can be used again, 0 if it is not set aside
+    public long getRemainingRetryNanos()
+    {
+        return Math.max(0, retryTime - System.nanoTime());
+    }
+
+    // True once every PING_INTERVAL_MILLIS, the caller then measures the round trip time
+    public boolean shouldPing()
+    {
+        if(!active || System.nanoTime() - nextPingTime < 0)
+        {
+            return false;
+        }
+        nextPingTime = System.nanoTime() + PING_INTERVAL_MILLIS * 1000000;
+        return true;
+    }
+
+    // The server joined the cluster again, possibly restarted with a new stub
+    public void activate(OperationServerSharedInfo info, OperationServerInterface stub)
+    {
+        this.info = info;
+        this.stub = stub;
+        this.active = true;
+        this.retryTime = System.nanoTime();
+        this.nextPingTime = System.nanoTime();
+    }
+
+    public void deactivate()
+    {
+        active = false;
+    }
+
+    public void onUnreachable()
+    {
+        retryTime = System.nanoTime() + retryDelayMillis * 1000000;
+    }
+
+    public void onBusy(long estimatedWaitMillis)
+    {
+        long delayMillis = Math.min(retryDelayMillis, Math.max(MIN_BUSY_DELAY_MILLIS, estimatedWaitMillis));
+        retryTime = System.nanoTime() + delayMillis * 1000000;
+    }
+}
@@ -0,0 +1,73 @@
+package loadbalancer;
+
+/**
+ * Reputation d'un serveur en mode non-securise, calculee a partir de ses votes.
+ *
+ * Le score est le taux d'accord lisse (accords + 1) / (votes + 2) : un nouveau serveur
+ * commence a 0.5. Un serveur dont le score passe sous QUARANTINE_SCORE apres au moins
+ * MIN_VOTES votes est mis en quarantaine : il ne recoit plus de nouvelles taches et ne
+ * sert qu'a departager les autres, ou sa voix seule ne peut pas faire accepter un resultat.
+ * Quand le repartiteur verifie lui-meme les resultats (ResultVerifier), un accord est un resultat
+ * verifie juste ; un serveur n'est digne de confiance qu'apres MIN_VOTES resultats justes et aucun faux.
+ * **/
+public class ServerReputation {
+
+    private static final int MIN_VOTES = 10;
+    private static final double QUARANTINE_SCORE = 0.6;
+
+    private final String serverName;
+    private int nbAgreements = 0;
+    private int nbDisagreements = 0;
+    private boolean quarantined = false;
+
+    public ServerReputation(String serverName)
+    {
+        this.serverName = serverName;
+    }
+
+    public void onAgreement()
+    {
+        nbAgreements++;
+        updateQuarantine();
+    }
+
+    public void onDisagreement()
+    {
+        nbDisagreements++;
+        updateQuarantine();
+    }
+
+    public double getScore()
+    {
+        return (nbAgreements + 1.0) / (nbAgreements + nbDisagreements + 2.0);
+    }
+
+    // Always right so far, over enough results for its results to be only spot-checked
+    public boolean isTrusted()
+    {
+        return nbDisagreements == 0 && nbAgreements >= MIN_VOTES;
+    }
+
+    public boolean isQuarantined()
+    {
+        return quarantined;
+    }
+
+    private void updateQuarantine()
+    {
+        boolean shouldBeQuarantined = nbAgreements + nbDisagreements >= MIN_VOTES && getScore() < QUARANTINE_SCORE;
+        if(shouldBeQuarantined != quarantined)
+        {
+            quarantined = shouldBeQuarantined;
+            System.out.println("Server " + serverName + (quarantined ? " quarantined" : " released from quarantine")
+                    + " (score " + String.format("%.2f", getScore()) + ")");
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Server " + serverName + " : " + nbAgreements + " agreements, " + nbDisagreements + " disagreements, score "
+                + String.format("%.2f", getScore()) + (quarantined ? ", quarantined" : "");
+    }
+}
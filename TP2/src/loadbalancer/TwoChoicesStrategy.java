@@ -0,0 +1,49 @@
+package loadbalancer;
+
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Deux choix aleatoires : deux serveurs disponibles tires au hasard, la tache va a celui qui a le moins
+ * de travail en cours (SchedulingStrategy.getOutstandingNanos). Presque aussi bon que LeastWorkStrategy
+ * sans comparer tous les serveurs, et deux repartiteurs qui se partageraient la grappe ne choisiraient
+ * pas tous les deux le meme serveur.
+ * **/
+public class TwoChoicesStrategy implements SchedulingStrategy {
+
+    @Override
+    public int selectServer(ArrayList<ServerHandle> servers)
+    {
+        ArrayList<Integer> available = new ArrayList<>();
+        for(int i = 0; i < servers.size(); i++)
+        {
+            if(servers.get(i).isAvailable())
+            {
+                available.add(i);
+            }
+        }
+        if(available.size() <= 1)
+        {
+            return available.isEmpty() ? -1 : available.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(available.size());
+        int second = random.nextInt(available.size() - 1);
+        if(second >= first)
+        {
+            second++;
+        }
+        int serverA = available.get(first);
+        int serverB = available.get(second);
+        double defaultNanosPerOperation = SchedulingStrategy.getSlowestNanosPerOperation(servers);
+        double workA = SchedulingStrategy.getOutstandingNanos(servers.get(serverA), defaultNanosPerOperation);
+        double workB = SchedulingStrategy.getOutstandingNanos(servers.get(serverB), defaultNanosPerOperation);
+        return workB < workA ? serverB : serverA;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "two-choices";
+    }
+}
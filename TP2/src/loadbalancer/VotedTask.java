@@ -0,0 +1,219 @@
+package loadbalancer;
+
+import shared.PackedTask;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Tache calculee par plusieurs serveurs en mode non-securise.
+ *
+ * Deux serveurs calculent la tache en meme temps. Le resultat est accepte des que deux
+ * serveurs sont d'accord ; sinon un serveur qui n'a pas encore vote est sollicite pour
+ * departager. Un serveur ne vote qu'une fois par tache : quand aucun serveur actif ne peut
+ * plus departager, le repartiteur oublie les votes et la tache recommence avec deux serveurs.
+ *
+ * Avec perOperation, chaque vote donne le resultat de chaque operation : les operations sur
+ * lesquelles deux serveurs sont d'accord sont acquises, et seules les autres sont envoyees au
+ * serveur qui departage (une sous-tache, getRoundTask). Sinon un vote est la somme de la tache,
+ * comme une seule operation qui couvre toute la tache.
+ * **/
+public class VotedTask {
+
+    private final PackedTask task;
+    private final boolean perOperation;
+    private final ArrayList<Integer> askedServers = new ArrayList<>(); // servers with a pending or received vote
+    private final ArrayList<Integer> voters = new ArrayList<>();
+    private final ArrayList<int[]> votes = new ArrayList<>(); // result of each voter by unit, MISSING where it did not vote
+    private final int[] agreedResults; // by unit: an operation, or the whole task
+    private final boolean[] agreed;
+    private int nbAgreedUnits = 0;
+    private int[] roundUnits; // units asked in the current round
+    private PackedTask roundTask; // operations of roundUnits, the task itself when all are asked
+    private final ArrayList<PackedTask> roundTasks = new ArrayList<>(); // every task sent for this vote
+    private int nbMissingVotes;
+    private int nbPendingVotes = 0;
+    private static final int MISSING = Integer.MIN_VALUE;
+
+    public VotedTask(PackedTask task, boolean perOperation)
+    {
+        this.task = task;
+        this.perOperation = perOperation;
+        int nbUnits = perOperation ? task.size() : 1;
+        this.agreedResults = new int[nbUnits];
+        this.agreed = new boolean[nbUnits];
+        startRound(2);
+    }
+
+    public PackedTask getTask() {
+        return task;
+    }
+
+    // Operations to send to the servers asked in the current round
+    public PackedTask getRoundTask() {
+        return roundTask;
+    }
+
+    // Every task sent for this vote: the task, then the operations sent to the tie-breakers
+    public ArrayList<PackedTask> getRoundTasks() {
+        return roundTasks;
+    }
+
+    // Number of servers that still have to be asked for a result
+    public int getNbMissingVotes() {
+        return nbMissingVotes;
+    }
+
+    public boolean wasAsked(int serverNumber)
+    {
+        return askedServers.contains(serverNumber);
+    }
+
+    public void onVoteRequested(int serverNumber)
+    {
+        askedServers.add(serverNumber);
+        nbMissingVotes--;
+        nbPendingVotes++;
+    }
+
+    // The server could not calculate the task, it may be asked again later
+    public void onVoteFailed(int serverNumber)
+    {
+        askedServers.remove(Integer.valueOf(serverNumber));
+        nbPendingVotes--;
+        nbMissingVotes++;
+    }
+
+    public boolean hasPendingVotes()
+    {
+        return nbPendingVotes > 0;
+    }
+
+    /**
+     * Records the results of a server for the round task: one per operation, or the sum of the task.
+     * Returns the sum of the results agreed on by two servers for every operation, or null if there
+     * is no majority yet (a tie-breaker is then requested for the operations in disagreement).
+     * **/
+    public Integer onVoteReceived(int serverNumber, int[] results)
+    {
+        nbPendingVotes--;
+        int[] vote = new int[agreed.length];
+        Arrays.fill(vote, MISSING);
+        for(int i = 0; i < roundUnits.length && i < results.length; i++)
+        {
+            int unit = roundUnits[i];
+            if(!agreed[unit] && hasVoted(unit, results[i]))
+            {
+                agreed[unit] = true;
+                agreedResults[unit] = results[i];
+                nbAgreedUnits++;
+            }
+            vote[unit] = results[i];
+        }
+        voters.add(serverNumber);
+        votes.add(vote);
+
+        if(nbAgreedUnits == agreed.length)
+        {
+            int agreedResult = 0;
+            for(int result : agreedResults)
+            {
+                agreedResult += result;
+            }
+            return agreedResult;
+        }
+        if(nbPendingVotes == 0 && nbMissingVotes == 0)
+        {
+            // Disagreement: ask a tie-breaker
+            startRound(1);
+        }
+        return null;
+    }
+
+    // No server is left to break the tie: forget the votes that have no majority and ask two servers again
+    public void startOver()
+    {
+        askedServers.clear();
+        for(int i = votes.size() - 1; i >= 0; i--)
+        {
+            boolean counted = false;
+            for(int unit = 0; unit < agreed.length; unit++)
+            {
+                if(!agreed[unit])
+                {
+                    votes.get(i)[unit] = MISSING;
+                }
+                counted |= votes.get(i)[unit] != MISSING;
+            }
+            if(!counted)
+            {
+                votes.remove(i);
+                voters.remove(i);
+            }
+        }
+        startRound(2);
+    }
+
+    public ArrayList<Integer> getVoters() {
+        return voters;
+    }
+
+    // True if every result of the voter that has a majority is the agreed one
+    public boolean hasVotedRight(int voterIndex)
+    {
+        int[] vote = votes.get(voterIndex);
+        for(int unit = 0; unit < agreed.length; unit++)
+        {
+            if(agreed[unit] && vote[unit] != MISSING && vote[unit] != agreedResults[unit])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasVoted(int unit, int result)
+    {
+        for(int[] vote : votes)
+        {
+            if(vote[unit] == result)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The next nbVotes servers are asked for the units without a majority
+    private void startRound(int nbVotes)
+    {
+        roundUnits = new int[agreed.length - nbAgreedUnits];
+        for(int unit = 0, i = 0; unit < agreed.length; unit++)
+        {
+            if(!agreed[unit])
+            {
+                roundUnits[i++] = unit;
+            }
+        }
+        if(!perOperation || roundUnits.length == task.size())
+        {
+            roundTask = task;
+        }
+        else
+        {
+            byte[] opcodes = new byte[roundUnits.length];
+            int[] operands = new int[roundUnits.length];
+            for(int i = 0; i < roundUnits.length; i++)
+            {
+                opcodes[i] = task.getOpcodes()[roundUnits[i]];
+                operands[i] = task.getOperands()[roundUnits[i]];
+            }
+            roundTask = new PackedTask(opcodes, operands);
+        }
+        if(!roundTasks.contains(roundTask))
+        {
+            roundTasks.add(roundTask);
+        }
+        nbMissingVotes = nbVotes;
+    }
+}
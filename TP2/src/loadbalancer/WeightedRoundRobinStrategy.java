@@ -0,0 +1,49 @@
+package loadbalancer;
+
+import java.util.ArrayList;
+
+/**
+ * Tourniquet pondere par la capacite, lisse comme dans nginx : a chaque choix, chaque serveur disponible
+ * gagne sa capacite en credit, le plus riche est choisi et perd la somme des capacites. Un serveur de
+ * capacite 8 recoit deux fois plus de taches qu'un serveur de capacite 4, sans les recevoir d'affilee.
+ * Le temps de calcul mesure n'est pas pris en compte.
+ * **/
+public class WeightedRoundRobinStrategy implements SchedulingStrategy {
+
+    private final ArrayList<Integer> credits = new ArrayList<>(); // by server number
+
+    @Override
+    public int selectServer(ArrayList<ServerHandle> servers)
+    {
+        while(credits.size() < servers.size())
+        {
+            credits.add(0);
+        }
+        int selected = -1;
+        int totalWeight = 0;
+        for(int i = 0; i < servers.size(); i++)
+        {
+            if(servers.get(i).isAvailable())
+            {
+                int weight = Math.max(1, servers.get(i).getInfo().getCapacity());
+                credits.set(i, credits.get(i) + weight);
+                totalWeight += weight;
+                if(selected == -1 || credits.get(i) > credits.get(selected))
+                {
+                    selected = i;
+                }
+            }
+        }
+        if(selected != -1)
+        {
+            credits.set(selected, credits.get(selected) - totalWeight);
+        }
+        return selected;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "weighted-round-robin";
+    }
+}
@@ -0,0 +1,95 @@
+package operationserver;
+
+import shared.TaskRejectedException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Controle d'admission des taches par une file bornee, a la place du rejet aleatoire.
+ *
+ * Une tache est admise si elle a au plus TASK_FACTOR * capacite operations et si les operations
+ * deja admises (en calcul ou en attente) plus les siennes tiennent dans la file, de QUEUE_FACTOR
+ * taches de taille maximale. Sinon elle est refusee tout de suite, avant
+ * l'authentification, avec la place libre et l'attente estimee : le repartiteur peut l'envoyer
+ * ailleurs. Au plus nbWorkers taches calculent en meme temps, les autres attendent leur tour
+ * dans l'ordre d'arrivee. L'attente estimee vient du temps moyen par operation des taches calculees.
+ * **/
+public class AdmissionControl {
+
+    private static final int TASK_FACTOR = 5; // the legacy rule always rejected tasks of 5 * capacity operations
+    private static final int QUEUE_FACTOR = 4; // room for the tasks in flight of a load balancer (maxInFlightTasks)
+    private static final double SMOOTHING = 0.2;
+
+    private final int maxTaskOperations;
+    private final int maxQueuedOperations;
+    private final int nbWorkers;
+    private final Semaphore workers;
+    private final AtomicInteger queuedOperations = new AtomicInteger(0);
+    private volatile double nanosPerOperation = 0; // 0 until the first task is calculated
+
+    public AdmissionControl(int capacity, int nbWorkers)
+    {
+        this.maxTaskOperations = Math.max(1, TASK_FACTOR * capacity - 1);
+        this.maxQueuedOperations = QUEUE_FACTOR * maxTaskOperations;
+        this.nbWorkers = Math.max(1, nbWorkers);
+        this.workers = new Semaphore(this.nbWorkers, true);
+    }
+
+    // Reserves room for the task in the queue, or throws with the backpressure hints
+    public void admit(int taskSize) throws TaskRejectedException
+    {
+        while(true)
+        {
+            int queued = queuedOperations.get();
+            if(taskSize > maxTaskOperations || queued + taskSize > maxQueuedOperations)
+            {
+                long estimatedWaitMillis = (long) (queued * nanosPerOperation / nbWorkers / 1E6);
+                throw new TaskRejectedException(maxQueuedOperations - queued, maxTaskOperations, estimatedWaitMillis);
+            }
+            if(queuedOperations.compareAndSet(queued, queued + taskSize))
+            {
+                return;
+            }
+        }
+    }
+
+    // Frees the room of an admitted task that will not be calculated
+    public void cancel(int taskSize)
+    {
+        queuedOperations.addAndGet(-taskSize);
+    }
+
+    // Blocks until one of the workers is free
+    public void awaitTurn() throws InterruptedException
+    {
+        workers.acquire();
+    }
+
+    // The admitted task was calculated by a worker in elapsedNanos
+    public void release(int taskSize, long elapsedNanos)
+    {
+        workers.release();
+        queuedOperations.addAndGet(-taskSize);
+        if(taskSize > 0)
+        {
+            synchronized (this)
+            {
+                double sample = elapsedNanos / (double) taskSize;
+                nanosPerOperation = nanosPerOperation == 0 ? sample : nanosPerOperation + SMOOTHING * (sample - nanosPerOperation);
+            }
+        }
+    }
+
+    public int getQueuedOperations()
+    {
+        return queuedOperations.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Admission control: tasks of at most " + maxTaskOperations + " operations, queue of " + maxQueuedOperations
+                + " operations, " + nbWorkers + " tasks calculated at a time";
+    }
+}
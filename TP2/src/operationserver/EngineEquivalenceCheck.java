@@ -0,0 +1,86 @@
+package operationserver;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Compare le moteur FAST au moteur REFERENCE pour toutes les operandes de 0 jusqu'a la plus
+ * grande operande trouvee dans les fichiers du repertoire operations.
+ *
+ * Lancer avec 'ant verify-engine' dans le repertoire TP2.
+ * **/
+public class EngineEquivalenceCheck {
+
+    private static final String OPERATIONS_DIRECTORY = "operations";
+    // Pell deborde a partir de 26, on verifie aussi cette zone
+    private static final int MIN_PELL_BOUND = 40;
+
+    public static void main(String[] args)
+    {
+        int maxPell = MIN_PELL_BOUND;
+        int maxPrime = 0;
+
+        File[] operationsFiles = new File(OPERATIONS_DIRECTORY).listFiles();
+        if(operationsFiles == null)
+        {
+            System.err.println("Error: Could not list the " + OPERATIONS_DIRECTORY + " directory.");
+            System.exit(1);
+        }
+
+        for(File operationsFile : operationsFiles)
+        {
+            try (BufferedReader in = new BufferedReader(new FileReader(operationsFile)))
+            {
+                String readedOperation;
+                while ((readedOperation = in.readLine()) != null)
+                {
+                    String[] splitedOp = readedOperation.split(" ");
+                    int opValue = Integer.parseInt(splitedOp[1]);
+                    if(splitedOp[0].equals("pell"))
+                    {
+                        maxPell = Math.max(maxPell, opValue);
+                    }
+                    else if(splitedOp[0].equals("prime"))
+                    {
+                        maxPrime = Math.max(maxPrime, opValue);
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                System.err.println("Error: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        int nbMismatches = 0;
+        for(int x = 0; x <= maxPell; x++)
+        {
+            if(OperationEngine.FAST.pell(x) != OperationEngine.REFERENCE.pell(x))
+            {
+                System.err.println("Mismatch: pell " + x);
+                nbMismatches++;
+            }
+        }
+        System.out.println("pell 0.." + maxPell + " checked.");
+
+        for(int x = -1; x <= maxPrime; x++)
+        {
+            if(OperationEngine.FAST.prime(x) != OperationEngine.REFERENCE.prime(x))
+            {
+                System.err.println("Mismatch: prime " + x);
+                nbMismatches++;
+            }
+        }
+        System.out.println("prime -1.." + maxPrime + " checked.");
+
+        if(nbMismatches > 0)
+        {
+            System.err.println(nbMismatches + " mismatches between FAST and REFERENCE engines.");
+            System.exit(1);
+        }
+        System.out.println("FAST and REFERENCE engines are equivalent.");
+    }
+}
@@ -0,0 +1,49 @@
+package operationserver;
+
+import shared.FastOperations;
+import shared.PackedTask;
+
+/**
+ * Moteur de calcul utilise par un serveur, choisi au demarrage avec --engine=.
+ * **/
+public enum OperationEngine {
+
+    REFERENCE {
+        @Override
+        public int pell(int x) { return Operations.pell(x); }
+
+        @Override
+        public int prime(int x) { return Operations.prime(x); }
+    },
+
+    FAST {
+        // pell d'un nombre negatif : la reference ne termine pas, on garde son comportement
+        @Override
+        public int pell(int x) { return x < 0 ? Operations.pell(x) : FastOperations.pell(x); }
+
+        @Override
+        public int prime(int x) { return FastOperations.prime(x); }
+    };
+
+    public abstract int pell(int x);
+
+    public abstract int prime(int x);
+
+    public int evaluate(int opcode, int x)
+    {
+        return opcode == PackedTask.OP_PELL ? pell(x) : prime(x);
+    }
+
+    // Returns the engine matching the name, or null if there is none
+    public static OperationEngine fromName(String name)
+    {
+        for(OperationEngine engine : values())
+        {
+            if(engine.name().equalsIgnoreCase(name))
+            {
+                return engine;
+            }
+        }
+        return null;
+    }
+}
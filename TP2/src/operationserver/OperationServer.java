@@ -9,6 +9,10 @@ import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -18,14 +22,31 @@ public class OperationServer implements OperationServerInterface {
     private String port;
     private int capacity; // nb operations pour lequel la tache est garantie
     private int maliciousResultRate; // 0: toujours de bons resultats, 100: toujours de faux resultats
+    private TaskCalculator taskCalculator;
+    private AdmissionControl admissionControl; // null: legacy random rejection of large tasks
+
+    // Metrics, recorded by the RMI threads
+    private final Metrics metrics = new Metrics("operationserver");
+    private final LongAdder tasksAccepted = metrics.counter("tasksAccepted");
+    private final LongAdder tasksRejected = metrics.counter("tasksRejected");
+    private final LongAdder falseIdentities = metrics.counter("falseIdentities");
+    private final LongAdder operations = metrics.counter("operations");
+    private final LongAdder tasksInProgress = metrics.counter("tasksInProgress");
+    private final Histogram taskTimes = metrics.histogram("taskNanos");
 
     private static AuthenticationServiceInterface authenticationServiceStub;
     private static OperationServerSharedInfo operationServerSharedInfo;
+    private static ResultCache resultCache;
+    private static SessionCache sessionCache;
+    private static final int DEFAULT_CACHE_MB = 4;
 
     public static void main(String[] args)
     {
-        // Make sure two required params are passed
-        if(args.length != 4)
+        // --<property>=<value> overrides application.properties
+        args = Configuration.parseArguments(args);
+
+        // Make sure the required params are passed
+        if(args.length < 4)
         {
             System.err.println("Error: Not enough params to run this program.");
             return;
@@ -53,7 +74,84 @@ public class OperationServer implements OperationServerInterface {
             return;
         }
 
-        String secureValue = ApplicationProperties.getPropertyValueFromKey("secure");
+        // Optional flags
+        OperationEngine engine = OperationEngine.REFERENCE;
+        int cacheSizeMB = DEFAULT_CACHE_MB;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        boolean capacityPerCore = false;
+        boolean legacyAdmission = false;
+        int metricsPort = 0;
+        for(int i = 4; i < args.length; i++)
+        {
+            if(args[i].startsWith("--engine="))
+            {
+                engine = OperationEngine.fromName(args[i].substring("--engine=".length()));
+                if(engine == null)
+                {
+                    System.err.println("Error: Unknown engine " + args[i] + ". Expected --engine=reference or --engine=fast.");
+                    return;
+                }
+            }
+            else if(args[i].startsWith("--cache-mb="))
+            {
+                String cacheValue = args[i].substring("--cache-mb=".length());
+                if(!cacheValue.matches(numberRegex))
+                {
+                    System.err.println("Error: Expected int value for --cache-mb");
+                    return;
+                }
+                cacheSizeMB = Integer.parseInt(cacheValue);
+            }
+            else if(args[i].startsWith("--parallelism="))
+            {
+                String parallelismValue = args[i].substring("--parallelism=".length());
+                if(!parallelismValue.matches(numberRegex) || Integer.parseInt(parallelismValue) == 0)
+                {
+                    System.err.println("Error: Expected positive int value for --parallelism");
+                    return;
+                }
+                parallelism = Integer.parseInt(parallelismValue);
+            }
+            else if(args[i].startsWith("--metrics-port="))
+            {
+                String metricsPortValue = args[i].substring("--metrics-port=".length());
+                if(!metricsPortValue.matches(numberRegex))
+                {
+                    System.err.println("Error: Expected int value for --metrics-port");
+                    return;
+                }
+                metricsPort = Integer.parseInt(metricsPortValue);
+            }
+            else if(args[i].startsWith("--admission="))
+            {
+                String admissionValue = args[i].substring("--admission=".length());
+                if(!admissionValue.equals("queue") && !admissionValue.equals("legacy"))
+                {
+                    System.err.println("Error: Expected --admission=queue or --admission=legacy");
+                    return;
+                }
+                legacyAdmission = admissionValue.equals("legacy");
+            }
+            else if(args[i].equals("--capacity-per-core"))
+            {
+                capacityPerCore = true;
+            }
+            else
+            {
+                System.err.println("Error: Unknown param " + args[i]);
+                return;
+            }
+        }
+        System.out.println("Using " + engine.name().toLowerCase() + " operation engine.");
+        resultCache = new ResultCache(cacheSizeMB * 1024L * 1024L);
+        System.out.println(resultCache);
+        if(capacityPerCore)
+        {
+            capacity *= parallelism;
+        }
+        System.out.println("Using " + parallelism + " threads per task, advertised capacity is " + capacity + ".");
+
+        Boolean secureValue = Configuration.get().getSecure();
         if(secureValue == null)
         {
             System.err.println("Error: Could not read secure property value in application.properties.");
@@ -61,7 +159,7 @@ public class OperationServer implements OperationServerInterface {
         }
         else
         {
-            boolean secureMode = Boolean.parseBoolean(secureValue);
+            boolean secureMode = secureValue;
             if(secureMode == true)
             {
                 System.out.println("Secure mode enabled. Forcing malicious result rate to 0%.");
@@ -70,7 +168,8 @@ public class OperationServer implements OperationServerInterface {
         }
 
         System.setProperty("java.rmi.server.hostname",args[0]);
-        OperationServer operationServer = new OperationServer(args[0], args[1], capacity, maliciousResultRate);
+        OperationServer operationServer = new OperationServer(args[0], args[1], capacity, maliciousResultRate, engine, parallelism, legacyAdmission);
+        operationServer.metrics.export(metricsPort);
 
         // If the server crashes or exits
         Runtime.getRuntime().addShutdownHook(new ShutDownTask());
@@ -87,6 +186,7 @@ public class OperationServer implements OperationServerInterface {
         @Override
         public void run()
         {
+            System.out.println(resultCache);
             try
             {
                 authenticationServiceStub.unregisterOperationServer(operationServerSharedInfo);
@@ -101,12 +201,30 @@ public class OperationServer implements OperationServerInterface {
         }
     }
 
-    public OperationServer(String ipAddress, String port, int capacity, int maliciousResultRate)
+    public OperationServer(String ipAddress, String port, int capacity, int maliciousResultRate, OperationEngine engine, int parallelism,
+                           boolean legacyAdmission)
     {
         this.ipAddress = ipAddress;
         this.port = port;
         this.capacity = capacity;
         this.maliciousResultRate = maliciousResultRate;
+        this.taskCalculator = new TaskCalculator(engine, resultCache, parallelism);
+        if(legacyAdmission)
+        {
+            System.out.println("Legacy admission: tasks larger than the capacity are rejected at random.");
+        }
+        else
+        {
+            // Each task already uses parallelism cores
+            admissionControl = new AdmissionControl(capacity, Runtime.getRuntime().availableProcessors() / parallelism);
+            System.out.println(admissionControl);
+            metrics.gauge("queuedOperations", admissionControl::getQueuedOperations);
+        }
+        metrics.rate("operationsPerSecond", operations);
+        metrics.gauge("cacheHits", resultCache::getHits);
+        metrics.gauge("cacheMisses", resultCache::getMisses);
+        metrics.addHistogram("computeNanos.pell", taskCalculator.getComputeTime(PackedTask.OP_PELL));
+        metrics.addHistogram("computeNanos.prime", taskCalculator.getComputeTime(PackedTask.OP_PRIME));
         operationServerSharedInfo = new OperationServerSharedInfo(this.ipAddress, this.port, this.capacity);
 
         if (System.getSecurityManager() == null)
@@ -115,18 +233,9 @@ public class OperationServer implements OperationServerInterface {
         }
 
         // Register server in the authentication service
-        String authenticationServiceIp = ApplicationProperties.getPropertyValueFromKey("serviceIp");
+        String authenticationServiceIp = Configuration.get().getServiceIp();
         authenticationServiceStub = loadAuthenticationServiceStub(authenticationServiceIp);
-        try
-        {
-            authenticationServiceStub.registerOperationServer(operationServerSharedInfo);
-        }
-        catch (RemoteException e)
-        {
-            System.err.println("Cannot register server in AuthenticationService.");
-            System.err.println();
-            System.err.println("Error: " + e.getMessage());
-        }
+        sessionCache = new SessionCache(authenticationServiceStub);
     }
 
     private void run()
@@ -141,10 +250,12 @@ public class OperationServer implements OperationServerInterface {
             OperationServerInterface stub = (OperationServerInterface) UnicastRemoteObject
                     .exportObject(this, Integer.parseInt(this.port));
 
-            int rmiPort = Integer.parseInt(ApplicationProperties.getPropertyValueFromKey("rmiPort"));
-            Registry registry = LocateRegistry.getRegistry(this.ipAddress, rmiPort);
+            Registry registry = LocateRegistry.getRegistry(this.ipAddress, Configuration.get().getRmiPort());
             registry.rebind(this.ipAddress + ":" + this.port, stub);
 
+            // Register in the authentication service only once the load balancers can find the server
+            authenticationServiceStub.registerOperationServer(operationServerSharedInfo);
+            startHeartbeats();
             System.out.println("OperationServer ready.");
         }
         catch (ConnectException e)
@@ -160,14 +271,37 @@ public class OperationServer implements OperationServerInterface {
         }
     }
 
+    /**
+     * Tells the authentication service that the server is still alive, until the server stops
+     * **/
+    private void startHeartbeats()
+    {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() ->
+        {
+            try
+            {
+                authenticationServiceStub.heartbeat(operationServerSharedInfo);
+            }
+            catch (RemoteException e)
+            {
+                System.err.println("Error: Heartbeat failed. " + e.getMessage());
+            }
+        }, AuthenticationServiceInterface.HEARTBEAT_INTERVAL_MILLIS, AuthenticationServiceInterface.HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
     private AuthenticationServiceInterface loadAuthenticationServiceStub(String hostname)
     {
         AuthenticationServiceInterface stub = null;
 
         try
         {
-            int rmiPort = Integer.parseInt(ApplicationProperties.getPropertyValueFromKey("rmiPort"));
-            Registry registry = LocateRegistry.getRegistry(hostname, rmiPort);
+            Registry registry = LocateRegistry.getRegistry(hostname, Configuration.get().getRmiPort());
             stub = (AuthenticationServiceInterface) registry.lookup("authenticationservice");
         }
         catch (NotBoundException e)
@@ -218,40 +352,170 @@ public class OperationServer implements OperationServerInterface {
      */
     @Override
     public int calculateResult(String loadBalancerUser, String loadBalancerPassword, ArrayList<String> operationsList) throws RemoteException, TaskRejectedException, FalseIdentityException {
-        if(!authenticationServiceStub.verifyLoadBalancerIdentity(loadBalancerUser, loadBalancerPassword))
+        return calculatePackedResult(loadBalancerUser, loadBalancerPassword, PackedTask.parse(operationsList));
+    }
+
+    /*
+     * Méthode accessible par RMI. Les operations sont deja analysees par le repartiteur.
+     */
+    @Override
+    public int calculatePackedResult(String loadBalancerUser, String loadBalancerPassword, PackedTask task) throws RemoteException, TaskRejectedException, FalseIdentityException {
+        admitTask(task.size());
+        boolean verified = false;
+        try
+        {
+            verified = authenticationServiceStub.verifyLoadBalancerIdentity(loadBalancerUser, loadBalancerPassword);
+        }
+        finally
+        {
+            if(!verified)
+            {
+                cancelTask(task.size());
+            }
+        }
+        if(!verified)
         {
+            falseIdentities.increment();
             throw new FalseIdentityException();
         }
+        return calculateTask(task, null);
+    }
+
+    /*
+     * Méthode accessible par RMI. Le jeton de session est verifie localement tant qu'il est dans le cache.
+     */
+    @Override
+    public int calculatePackedResult(String sessionToken, PackedTask task) throws RemoteException, TaskRejectedException, FalseIdentityException {
+        admitTask(task.size());
+        verifySession(sessionToken, task.size());
+        return calculateTask(task, null);
+    }
 
-        // Make sure the server has enough resources to handle the task
-        if(acceptTask(operationsList.size()) == false)
+    /*
+     * Méthode accessible par RMI. Comme calculatePackedResult, mais renvoie le resultat (modulo 4000)
+     * de chaque operation : en mode non-securise, le repartiteur ne fait reverifier que les operations
+     * sur lesquelles deux serveurs ne sont pas d'accord.
+     */
+    @Override
+    public int[] calculatePackedResults(String sessionToken, PackedTask task) throws RemoteException, TaskRejectedException, FalseIdentityException {
+        admitTask(task.size());
+        verifySession(sessionToken, task.size());
+        int[] results = new int[task.size()];
+        calculateTask(task, results);
+        return results;
+    }
+
+    // Checks the session token of an admitted task, the task is cancelled if it is not valid
+    private void verifySession(String sessionToken, int taskSize) throws RemoteException, FalseIdentityException
+    {
+        boolean verified = false;
+        try
+        {
+            verified = sessionCache.isValid(sessionToken);
+        }
+        finally
         {
-            throw new TaskRejectedException();
+            if(!verified)
+            {
+                cancelTask(taskSize);
+            }
+        }
+        if(!verified)
+        {
+            falseIdentities.increment();
+            throw new FalseIdentityException();
         }
+    }
 
-        boolean malicious = (Math.random() * 100) < this.maliciousResultRate;
+    /*
+     * Méthode accessible par RMI. Permet au repartiteur de mesurer le temps d'aller-retour.
+     */
+    @Override
+    public void ping() throws RemoteException {
+    }
 
-        int operationResult = 0;
-        for(String operation : operationsList)
+    /**
+     * Makes sure the server has enough resources to handle the task, before any other work
+     * **/
+    private void admitTask(int taskSize) throws TaskRejectedException
+    {
+        if(admissionControl == null)
         {
-            String[] splitedOp = operation.split(" ");
-            String opName = splitedOp[0];
-            int opValue = Integer.parseInt(splitedOp[1]);
+            if(acceptTask(taskSize) == false)
+            {
+                tasksRejected.increment();
+                throw new TaskRejectedException();
+            }
+            return;
+        }
+        try
+        {
+            admissionControl.admit(taskSize);
+        }
+        catch (TaskRejectedException e)
+        {
+            tasksRejected.increment();
+            throw e;
+        }
+    }
 
-            if(opName.equals("pell"))
+    // The admitted task will not be calculated
+    private void cancelTask(int taskSize)
+    {
+        if(admissionControl != null)
+        {
+            admissionControl.cancel(taskSize);
+        }
+    }
+
+    // Calculates an admitted task, once a worker is free. Returns the sum of the results, also
+    // written in results when it is not null
+    private int calculateTask(PackedTask task, int[] results) throws TaskRejectedException
+    {
+        if(admissionControl != null)
+        {
+            try
+            {
+                admissionControl.awaitTurn();
+            }
+            catch (InterruptedException e)
             {
-                operationResult += (Operations.pell(opValue) % 4000);
+                admissionControl.cancel(task.size());
+                Thread.currentThread().interrupt();
+                throw new TaskRejectedException();
             }
-            else if(opName.equals("prime"))
+        }
+
+        boolean malicious = (Math.random() * 100) < this.maliciousResultRate;
+
+        tasksInProgress.increment();
+        long start = System.nanoTime();
+        int operationResult;
+        try
+        {
+            operationResult = taskCalculator.calculate(task, results);
+        }
+        finally
+        {
+            tasksInProgress.decrement();
+            if(admissionControl != null)
             {
-                operationResult += (Operations.prime(opValue) % 4000);
+                admissionControl.release(task.size(), System.nanoTime() - start);
             }
         }
+        taskTimes.record(System.nanoTime() - start);
+        tasksAccepted.increment();
+        operations.add(task.size());
 
         if(malicious)
         {
             //System.out.println("Returning malicious result.");
-            return (operationResult + (int)(6 * Math.random() + 1));
+            int error = (int)(6 * Math.random() + 1);
+            if(results != null && results.length > 0)
+            {
+                results[(int)(results.length * Math.random())] += error;
+            }
+            return (operationResult + error);
         }
         return operationResult;
     }
@@ -0,0 +1,46 @@
+package operationserver;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Somme des resultats (modulo 4000) d'une plage d'operations, calculee en parallele
+ * dans le ForkJoinPool du TaskCalculator. La plage est coupee en deux tant qu'elle depasse le seuil.
+ * Si results n'est pas null, le resultat de chaque operation y est aussi ecrit.
+ * **/
+class OperationSumTask extends RecursiveTask<Integer> {
+
+    private final TaskCalculator calculator;
+    private final byte[] opcodes;
+    private final int[] opValues;
+    private final int from;
+    private final int to;
+    private final int threshold;
+    private final int[] results;
+
+    OperationSumTask(TaskCalculator calculator, byte[] opcodes, int[] opValues, int from, int to, int threshold, int[] results)
+    {
+        this.calculator = calculator;
+        this.opcodes = opcodes;
+        this.opValues = opValues;
+        this.from = from;
+        this.to = to;
+        this.threshold = threshold;
+        this.results = results;
+    }
+
+    @Override
+    protected Integer compute()
+    {
+        if(to - from <= threshold)
+        {
+            return calculator.sumOperations(opcodes, opValues, from, to, results);
+        }
+
+        int middle = (from + to) >>> 1;
+        OperationSumTask left = new OperationSumTask(calculator, opcodes, opValues, from, middle, threshold, results);
+        OperationSumTask right = new OperationSumTask(calculator, opcodes, opValues, middle, to, threshold, results);
+        left.fork();
+        int rightResult = right.compute();
+        return left.join() + rightResult;
+    }
+}
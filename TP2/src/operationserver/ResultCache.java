@@ -0,0 +1,123 @@
+package operationserver;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache borne des resultats d'operations, partage par tous les appels RMI du serveur.
+ *
+ * Cache associatif par ensembles de 4 entrees. Une entree est un long qui contient la cle
+ * (opcode et operande) dans les 32 bits du haut et le resultat dans les 32 bits du bas,
+ * elle est donc lue et ecrite atomiquement sans verrou ni allocation. Quand un ensemble
+ * est plein, une entree choisie au hasard est remplacee.
+ * **/
+public class ResultCache {
+
+    public static final long MISS = Long.MIN_VALUE;
+
+    private static final int WAYS = 4;
+    private static final int ENTRY_BYTES = 8;
+    // Cle 0xFFFFFFFF (prime Integer.MAX_VALUE) avec resultat -1 : prime ne retourne jamais -1
+    private static final long EMPTY = -1L;
+
+    private final AtomicLongArray entries;
+    private final int setMask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ResultCache(long maxBytes)
+    {
+        // Nombre d'ensembles arrondi a la puissance de 2 inferieure
+        long maxSets = maxBytes / (ENTRY_BYTES * WAYS);
+        int nbSets = maxSets <= 0 ? 0 : Integer.highestOneBit((int) Math.min(maxSets, 1 << 26));
+        this.entries = new AtomicLongArray(nbSets * WAYS);
+        this.setMask = nbSets - 1;
+        for (int i = 0; i < entries.length(); i++)
+        {
+            entries.set(i, EMPTY);
+        }
+    }
+
+    // Returns the cached result, or MISS if it is not in the cache
+    public long lookup(int opcode, int operand)
+    {
+        if (entries.length() == 0 || operand < 0)
+        {
+            misses.increment();
+            return MISS;
+        }
+
+        int key = key(opcode, operand);
+        int firstWay = firstWay(key);
+        for (int i = firstWay; i < firstWay + WAYS; i++)
+        {
+            long entry = entries.get(i);
+            if (entry != EMPTY && (int) (entry >>> 32) == key)
+            {
+                hits.increment();
+                return (int) entry;
+            }
+        }
+        misses.increment();
+        return MISS;
+    }
+
+    public void put(int opcode, int operand, int result)
+    {
+        if (entries.length() == 0 || operand < 0)
+        {
+            return;
+        }
+
+        int key = key(opcode, operand);
+        long newEntry = ((long) key << 32) | (result & 0xFFFFFFFFL);
+        int firstWay = firstWay(key);
+        for (int i = firstWay; i < firstWay + WAYS; i++)
+        {
+            long entry = entries.get(i);
+            if (entry == EMPTY ? entries.compareAndSet(i, EMPTY, newEntry) : (int) (entry >>> 32) == key)
+            {
+                return;
+            }
+        }
+        entries.set(firstWay + ThreadLocalRandom.current().nextInt(WAYS), newEntry);
+    }
+
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    public long getSizeInBytes()
+    {
+        return (long) entries.length() * ENTRY_BYTES;
+    }
+
+    @Override
+    public String toString()
+    {
+        long nbHits = getHits();
+        long nbLookups = nbHits + getMisses();
+        double hitRate = nbLookups == 0 ? 0 : 100.0 * nbHits / nbLookups;
+        return "ResultCache: " + getSizeInBytes() / 1024 + " KB, " + nbHits + " hits, " + getMisses() + " misses ("
+                + String.format("%.1f", hitRate) + "% hit rate)";
+    }
+
+    // Opcode in the highest bit, non-negative operand in the 31 others
+    private static int key(int opcode, int operand)
+    {
+        return (opcode << 31) | operand;
+    }
+
+    private int firstWay(int key)
+    {
+        int hash = key * 0x9E3779B9;
+        return ((hash ^ (hash >>> 16)) & setMask) * WAYS;
+    }
+}
@@ -0,0 +1,56 @@
+package operationserver;
+
+import shared.AuthenticationServiceInterface;
+
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Jetons de session deja verifies aupres du service d'authentification.
+ *
+ * Un jeton est garde au plus TTL_MILLIS : le service n'est appele qu'une fois par jeton
+ * et par intervalle, et une session revoquee (unregisterLoadBalancer) est refusee
+ * au plus tard TTL_MILLIS apres sa revocation.
+ * **/
+public class SessionCache {
+
+    private static final long TTL_MILLIS = 5000;
+    private static final int MAX_TOKENS = 1024;
+
+    private final AuthenticationServiceInterface authenticationServiceStub;
+    private final Map<String, Long> validUntil = new ConcurrentHashMap<>(); // key: token, value: expiration time
+
+    public SessionCache(AuthenticationServiceInterface authenticationServiceStub)
+    {
+        this.authenticationServiceStub = authenticationServiceStub;
+    }
+
+    public boolean isValid(String token) throws RemoteException
+    {
+        long now = System.currentTimeMillis();
+        Long expiration = validUntil.get(token);
+        if(expiration != null && expiration > now)
+        {
+            return true;
+        }
+
+        long remainingLifetime = authenticationServiceStub.verifySessionToken(token);
+        if(remainingLifetime <= 0)
+        {
+            validUntil.remove(token);
+            return false;
+        }
+
+        if(validUntil.size() >= MAX_TOKENS)
+        {
+            validUntil.values().removeIf(tokenExpiration -> tokenExpiration <= now);
+            if(validUntil.size() >= MAX_TOKENS)
+            {
+                validUntil.clear();
+            }
+        }
+        validUntil.put(token, now + Math.min(TTL_MILLIS, remainingLifetime));
+        return true;
+    }
+}
@@ -0,0 +1,84 @@
+package operationserver;
+
+import shared.Histogram;
+import shared.PackedTask;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Calcul d'une tache sur le serveur : moteur d'operations, cache de resultats et
+ * repartition des operations entre les coeurs. Ne depend pas de RMI.
+ * **/
+public class TaskCalculator {
+
+    private final OperationEngine engine;
+    private final ResultCache resultCache;
+    private final int parallelism; // nb de coeurs utilises pour calculer une tache
+    private final ForkJoinPool forkJoinPool;
+    private final Histogram[] computeTimes = { new Histogram(), new Histogram() }; // ns per operation calculated, by opcode
+
+    public TaskCalculator(OperationEngine engine, ResultCache resultCache, int parallelism)
+    {
+        this.engine = engine;
+        this.resultCache = resultCache;
+        this.parallelism = parallelism;
+        this.forkJoinPool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    // Time taken by the engine for the operations of this type, cache hits excluded
+    public Histogram getComputeTime(byte opcode)
+    {
+        return computeTimes[opcode];
+    }
+
+    // Returns the sum of the results (modulo 4000) of the operations of the task
+    public int calculate(PackedTask task)
+    {
+        return calculate(task, null);
+    }
+
+    // Returns the sum of the results, also written in results when it is not null
+    public int calculate(PackedTask task, int[] results)
+    {
+        int nbOperations = task.size();
+        if(forkJoinPool == null || nbOperations <= 1)
+        {
+            return sumOperations(task.getOpcodes(), task.getOperands(), 0, nbOperations, results);
+        }
+        // Splits the operations between the cores of the server
+        int threshold = Math.max(1, nbOperations / (4 * parallelism));
+        return forkJoinPool.invoke(new OperationSumTask(this, task.getOpcodes(), task.getOperands(), 0, nbOperations, threshold, results));
+    }
+
+    // Returns the sum of the results (modulo 4000) of the operations in [from, to[
+    int sumOperations(byte[] opcodes, int[] opValues, int from, int to, int[] results)
+    {
+        int sum = 0;
+        for(int i = from; i < to; i++)
+        {
+            int result = calculateOperation(opcodes[i], opValues[i]) % 4000;
+            if(results != null)
+            {
+                results[i] = result;
+            }
+            sum += result;
+        }
+        return sum;
+    }
+
+    // Returns the result of one operation, from the cache when it was already calculated
+    private int calculateOperation(int opcode, int opValue)
+    {
+        long cachedResult = resultCache.lookup(opcode, opValue);
+        if(cachedResult != ResultCache.MISS)
+        {
+            return (int) cachedResult;
+        }
+
+        long start = System.nanoTime();
+        int result = engine.evaluate(opcode, opValue);
+        computeTimes[opcode].record(System.nanoTime() - start);
+        resultCache.put(opcode, opValue, result);
+        return result;
+    }
+}
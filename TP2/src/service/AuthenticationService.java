@@ -1,26 +1,53 @@
 package service;
 
-import shared.ApplicationProperties;
 import shared.AuthenticationServiceInterface;
+import shared.Configuration;
+import shared.MembershipChanges;
 import shared.OperationServerSharedInfo;
+import shared.SessionToken;
 
 import java.rmi.ConnectException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.security.SecureRandom;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Base64;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class AuthenticationService implements AuthenticationServiceInterface {
 
-    private Map<String, String> loadBalancerIdentity = new HashMap<>(); // key: username, value: password
-    private ArrayList<OperationServerSharedInfo> availableServersInfo;
+    private Map<String, String> loadBalancerIdentity = new ConcurrentHashMap<>(); // key: username, value: password
+    private ServerRegistry serverRegistry = new ServerRegistry();
+    private static final long HEARTBEAT_TIMEOUT_MILLIS = 3 * HEARTBEAT_INTERVAL_MILLIS;
+
+    private static final long SESSION_LIFETIME_MILLIS = 5 * 60 * 1000;
+    private static final int TOKEN_BYTES = 16;
+    private Map<String, Session> sessions = new ConcurrentHashMap<>(); // key: token
+    private SecureRandom tokenGenerator = new SecureRandom();
+
+    private static class Session
+    {
+        private final String username;
+        private final long expiresAt;
+
+        Session(String username, long expiresAt)
+        {
+            this.username = username;
+            this.expiresAt = expiresAt;
+        }
+    }
 
     public static void main(String[] args)
     {
-        String serviceIp = ApplicationProperties.getPropertyValueFromKey("serviceIp");
+        // --<property>=<value> overrides application.properties
+        Configuration.parseArguments(args);
+        String serviceIp = Configuration.get().getServiceIp();
         System.setProperty("java.rmi.server.hostname", serviceIp);
         AuthenticationService service = new AuthenticationService();
         service.run();
@@ -28,7 +55,6 @@ public class AuthenticationService implements AuthenticationServiceInterface {
 
     public AuthenticationService()
     {
-        availableServersInfo = new ArrayList<>();
     }
 
     private void run()
@@ -40,14 +66,15 @@ public class AuthenticationService implements AuthenticationServiceInterface {
 
         try
         {
-            int servicePort = Integer.parseInt(ApplicationProperties.getPropertyValueFromKey("servicePort"));
+            int servicePort = Configuration.get().getServicePort();
             AuthenticationServiceInterface stub = (AuthenticationServiceInterface) UnicastRemoteObject
                     .exportObject(this, servicePort);
 
             String serviceIp = System.getProperty("java.rmi.server.hostname");
-            int rmiPort = Integer.parseInt(ApplicationProperties.getPropertyValueFromKey("rmiPort"));
+            int rmiPort = Configuration.get().getRmiPort();
             Registry registry = LocateRegistry.getRegistry(serviceIp, rmiPort);
             registry.rebind("authenticationservice", stub);
+            startEvictionTask();
             System.out.println("AuthenticationService ready.");
         }
         catch (ConnectException e)
@@ -75,47 +102,83 @@ public class AuthenticationService implements AuthenticationServiceInterface {
     {
         System.out.println("Removed load balancer with username " + username);
         loadBalancerIdentity.remove(username);
+
+        // Revoke the sessions of the load balancer
+        sessions.values().removeIf(session -> session.username.equals(username));
     }
 
     @Override
     public void registerOperationServer(OperationServerSharedInfo operationServerInfo) throws RemoteException
     {
         System.out.println("Added server with IP " + operationServerInfo.getIpAddress() + " and port " + operationServerInfo.getPort());
-        availableServersInfo.add(operationServerInfo);
+        serverRegistry.register(operationServerInfo);
     }
 
     @Override
     public void unregisterOperationServer(OperationServerSharedInfo operationServerInfo) throws RemoteException
     {
-        for(OperationServerSharedInfo serverInfo : this.availableServersInfo)
+        if(serverRegistry.unregister(operationServerInfo))
         {
-            if(serverInfo.getIpAddress().equals(operationServerInfo.getIpAddress()))
-            {
-                if(serverInfo.getPort().equals(operationServerInfo.getPort()))
-                {
-                    availableServersInfo.remove(serverInfo);
-                    System.out.println("Removed server with IP " + serverInfo.getIpAddress() + " and port " + serverInfo.getPort());
-                    break;
-                }
-            }
+            System.out.println("Removed server with IP " + operationServerInfo.getIpAddress() + " and port " + operationServerInfo.getPort());
+        }
+    }
+
+    /**
+     * Keeps the server in the available servers. A server that was evicted, or that registered
+     * before the service restarted, is added back.
+     * **/
+    @Override
+    public void heartbeat(OperationServerSharedInfo operationServerInfo) throws RemoteException
+    {
+        if(!serverRegistry.heartbeat(operationServerInfo))
+        {
+            registerOperationServer(operationServerInfo);
         }
     }
 
     @Override
     public ArrayList<OperationServerSharedInfo> getAvailableServersInfo() throws RemoteException
     {
-        return this.availableServersInfo;
+        return serverRegistry.getServers();
+    }
+
+    @Override
+    public MembershipChanges getMembershipChanges(long sinceVersion) throws RemoteException
+    {
+        return serverRegistry.getChangesSince(sinceVersion);
+    }
+
+    // Removes the servers that missed their last heartbeats
+    private void evictSilentServers()
+    {
+        for(OperationServerSharedInfo serverInfo : serverRegistry.evictSilentServers(HEARTBEAT_TIMEOUT_MILLIS))
+        {
+            System.out.println("Evicted server with IP " + serverInfo.getIpAddress() + " and port " + serverInfo.getPort()
+                    + " (no heartbeat for more than " + HEARTBEAT_TIMEOUT_MILLIS + " ms)");
+        }
+    }
+
+    private void startEvictionTask()
+    {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "server-eviction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::evictSilentServers, HEARTBEAT_INTERVAL_MILLIS, HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
     }
 
     @Override
     public boolean verifyLoadBalancerIdentity(String username, String password) throws RemoteException
     {
-        if(!loadBalancerIdentity.containsKey(username))
+        String expectedPassword = loadBalancerIdentity.get(username); // single read, the user may be removed concurrently
+        if(expectedPassword == null)
         {
             System.out.println("Verification failed. User does not exist.");
             return false;
         }
-        if(!loadBalancerIdentity.get(username).equals(password))
+        if(!expectedPassword.equals(password))
         {
             System.out.println("Verification failed. Password is incorrect.");
             return false;
@@ -123,4 +186,38 @@ public class AuthenticationService implements AuthenticationServiceInterface {
         //System.out.println("Verification success. Credentials are valid.");
         return true;
     }
+
+    @Override
+    public SessionToken openSession(String username, String password) throws RemoteException
+    {
+        if(!verifyLoadBalancerIdentity(username, password))
+        {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(session -> session.expiresAt <= now);
+
+        byte[] tokenBytes = new byte[TOKEN_BYTES];
+        tokenGenerator.nextBytes(tokenBytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes);
+        sessions.put(token, new Session(username, now + SESSION_LIFETIME_MILLIS));
+        System.out.println("Opened session for load balancer with username " + username);
+        return new SessionToken(token, SESSION_LIFETIME_MILLIS);
+    }
+
+    /**
+     * Returns the remaining lifetime of the session in milliseconds, or 0 if the token is unknown, expired or revoked.
+     * **/
+    @Override
+    public long verifySessionToken(String token) throws RemoteException
+    {
+        Session session = sessions.get(token);
+        if(session == null)
+        {
+            System.out.println("Verification failed. Session does not exist.");
+            return 0;
+        }
+        return Math.max(0, session.expiresAt - System.currentTimeMillis());
+    }
 }
@@ -0,0 +1,166 @@
+package service;
+
+import shared.MembershipChanges;
+import shared.OperationServerSharedInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Liste des serveurs de calcul disponibles, partagee par les threads RMI du service.
+ *
+ * La liste est publiee sous forme d'instantanes immuables et versionnes : les lectures ne prennent
+ * aucun verrou, seules les arrivees et departs (rares) sont serialises et copient l'instantane.
+ * Chaque instantane garde les MAX_CHANGES derniers changements pour repondre aux demandes
+ * "changements depuis la version N". Les battements de coeur ne touchent pas l'instantane.
+ * **/
+public class ServerRegistry {
+
+    private static final int MAX_CHANGES = 256;
+
+    private static class Change
+    {
+        private final OperationServerSharedInfo info;
+        private final boolean joined;
+
+        Change(OperationServerSharedInfo info, boolean joined)
+        {
+            this.info = info;
+            this.joined = joined;
+        }
+    }
+
+    private static class Snapshot
+    {
+        private final long version;
+        private final Map<String, OperationServerSharedInfo> servers; // key: ip:port
+        private final List<Change> recentChanges; // changes leading to versions version - size + 1 .. version
+
+        Snapshot(long version, Map<String, OperationServerSharedInfo> servers, List<Change> recentChanges)
+        {
+            this.version = version;
+            this.servers = servers;
+            this.recentChanges = recentChanges;
+        }
+    }
+
+    private volatile Snapshot snapshot = new Snapshot(0, Collections.emptyMap(), Collections.emptyList());
+    private final Map<String, Long> lastHeartbeats = new ConcurrentHashMap<>(); // key: ip:port, value: System.currentTimeMillis()
+
+    public static String getServerName(OperationServerSharedInfo serverInfo)
+    {
+        return serverInfo.getIpAddress() + ":" + serverInfo.getPort();
+    }
+
+    // Adds the server, or replaces it if it registers again (after a restart, for example)
+    public synchronized void register(OperationServerSharedInfo serverInfo)
+    {
+        lastHeartbeats.put(getServerName(serverInfo), System.currentTimeMillis());
+        publish(new Change(serverInfo, true));
+    }
+
+    // Returns false if the server was not registered
+    public synchronized boolean unregister(OperationServerSharedInfo serverInfo)
+    {
+        String serverName = getServerName(serverInfo);
+        OperationServerSharedInfo registeredInfo = snapshot.servers.get(serverName);
+        if(registeredInfo == null)
+        {
+            return false;
+        }
+        lastHeartbeats.remove(serverName);
+        publish(new Change(registeredInfo, false));
+        return true;
+    }
+
+    // Returns false if the server is not registered (evicted, or registered before the service restarted)
+    public boolean heartbeat(OperationServerSharedInfo serverInfo)
+    {
+        return lastHeartbeats.replace(getServerName(serverInfo), System.currentTimeMillis()) != null;
+    }
+
+    // Removes the servers without a heartbeat for more than timeoutMillis and returns them
+    public synchronized List<OperationServerSharedInfo> evictSilentServers(long timeoutMillis)
+    {
+        List<OperationServerSharedInfo> evictedServers = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for(OperationServerSharedInfo serverInfo : snapshot.servers.values())
+        {
+            Long lastHeartbeat = lastHeartbeats.get(getServerName(serverInfo));
+            if(lastHeartbeat == null || now - lastHeartbeat > timeoutMillis)
+            {
+                evictedServers.add(serverInfo);
+            }
+        }
+        for(OperationServerSharedInfo serverInfo : evictedServers)
+        {
+            unregister(serverInfo);
+        }
+        return evictedServers;
+    }
+
+    public long getVersion()
+    {
+        return snapshot.version;
+    }
+
+    public ArrayList<OperationServerSharedInfo> getServers()
+    {
+        return new ArrayList<>(snapshot.servers.values());
+    }
+
+    /**
+     * Returns the servers that joined or left after the given version, merged so that each server
+     * appears once, or the full list if the version is unknown or too old.
+     * **/
+    public MembershipChanges getChangesSince(long version)
+    {
+        Snapshot current = snapshot;
+        long oldestVersion = current.version - current.recentChanges.size();
+        if(version < oldestVersion || version > current.version)
+        {
+            return new MembershipChanges(current.version, true, new ArrayList<>(current.servers.values()), new ArrayList<>());
+        }
+
+        Map<String, Change> lastChanges = new LinkedHashMap<>();
+        List<Change> changes = current.recentChanges.subList((int) (version - oldestVersion), current.recentChanges.size());
+        for(Change change : changes)
+        {
+            lastChanges.put(getServerName(change.info), change);
+        }
+        ArrayList<OperationServerSharedInfo> joined = new ArrayList<>();
+        ArrayList<OperationServerSharedInfo> left = new ArrayList<>();
+        for(Change change : lastChanges.values())
+        {
+            (change.joined ? joined : left).add(change.info);
+        }
+        return new MembershipChanges(current.version, false, joined, left);
+    }
+
+    // Copies the current snapshot with the change applied, called with the lock held
+    private void publish(Change change)
+    {
+        Snapshot current = snapshot;
+        Map<String, OperationServerSharedInfo> servers = new LinkedHashMap<>(current.servers);
+        if(change.joined)
+        {
+            servers.put(getServerName(change.info), change.info);
+        }
+        else
+        {
+            servers.remove(getServerName(change.info));
+        }
+
+        List<Change> recentChanges = new ArrayList<>(current.recentChanges);
+        recentChanges.add(change);
+        if(recentChanges.size() > MAX_CHANGES)
+        {
+            recentChanges.remove(0);
+        }
+        snapshot = new Snapshot(current.version + 1, Collections.unmodifiableMap(servers), Collections.unmodifiableList(recentChanges));
+    }
+}
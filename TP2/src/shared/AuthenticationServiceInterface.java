@@ -5,10 +5,16 @@ import java.rmi.RemoteException;
 import java.util.ArrayList;
 
 public interface AuthenticationServiceInterface extends Remote {
+    long HEARTBEAT_INTERVAL_MILLIS = 1000; // a server that misses 3 heartbeats is evicted
+
     void registerLoadBalancer(String username, String password) throws RemoteException;
     void unregisterLoadBalancer(String username) throws RemoteException;
     boolean verifyLoadBalancerIdentity(String username, String password) throws RemoteException;
+    SessionToken openSession(String username, String password) throws RemoteException;
+    long verifySessionToken(String token) throws RemoteException;
     void registerOperationServer(OperationServerSharedInfo operationServerInfo) throws RemoteException;
     void unregisterOperationServer(OperationServerSharedInfo operationServerInfo) throws RemoteException;
+    void heartbeat(OperationServerSharedInfo operationServerInfo) throws RemoteException;
     ArrayList<OperationServerSharedInfo> getAvailableServersInfo() throws RemoteException;
+    MembershipChanges getMembershipChanges(long sinceVersion) throws RemoteException;
 }
@@ -0,0 +1,308 @@
+package shared;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Configuration de l'application, lue une seule fois dans des champs types.
+ *
+ * Une propriete vient, par ordre de priorite, d'une option --cle=valeur de la ligne de commande
+ * (parseArguments), d'une propriete systeme du meme nom (java -Dcle=valeur ...), puis de
+ * application.properties ; sinon elle prend sa valeur par defaut. Une configuration est immuable :
+ * watch() relit le fichier quand il change et get() renvoie alors une nouvelle configuration.
+ * Le repartiteur applique les reglages d'ordonnancement de la nouvelle configuration sans redemarrer,
+ * les autres (mode, adresses, ports) ne changent qu'au redemarrage.
+ * **/
+public final class Configuration {
+
+    public static final String PROPERTIES_FILENAME = "application.properties";
+    private static final int DEFAULT_RMI_PORT = 5021; // port of the rmiregistry in the README
+    private static final int DEFAULT_SERVICE_PORT = 5001;
+    private static final List<String> KEYS = Arrays.asList("secure", "serviceIp", "rmiPort", "servicePort", "metricsPort",
+            "checkpoint", "maxInFlightTasks", "hedging", "maxCopies", "retryDelayMillis", "chunkDecrease", "costBasedTasks",
+            "resultVectors", "verification", "spotCheckRate", "scheduling");
+
+    private static final Map<String, String> commandLineValues = new ConcurrentHashMap<>();
+    private static volatile Configuration current;
+
+    private final Boolean secure; // null if it is not configured
+    private final String serviceIp;
+    private final int rmiPort;
+    private final int servicePort;
+    private final int metricsPort;
+    private final boolean checkpoint;
+    // Scheduler settings, applied by a running load balancer
+    private final int maxInFlightTasks;
+    private final boolean hedging;
+    private final int maxCopies;
+    private final long retryDelayMillis;
+    private final double chunkDecrease;
+    private final boolean costBasedTasks;
+    private final boolean resultVectors;
+    private final String verification;
+    private final double spotCheckRate;
+    private final String scheduling;
+
+    private Configuration(Map<String, String> values)
+    {
+        String secureValue = values.get("secure");
+        secure = secureValue == null ? null : Boolean.parseBoolean(secureValue);
+        serviceIp = values.get("serviceIp");
+        rmiPort = getPort(values, "rmiPort", DEFAULT_RMI_PORT);
+        servicePort = getPort(values, "servicePort", DEFAULT_SERVICE_PORT);
+        metricsPort = getInt(values, "metricsPort", 0);
+        checkpoint = getBoolean(values, "checkpoint", true);
+        maxInFlightTasks = getInt(values, "maxInFlightTasks", 4);
+        hedging = getBoolean(values, "hedging", true);
+        maxCopies = getInt(values, "maxCopies", 2);
+        retryDelayMillis = getInt(values, "retryDelayMillis", 1000);
+        chunkDecrease = getDouble(values, "chunkDecrease", 0.5);
+        costBasedTasks = getBoolean(values, "costBasedTasks", true);
+        resultVectors = getBoolean(values, "resultVectors", true);
+        verification = values.getOrDefault("verification", "replica");
+        spotCheckRate = getDouble(values, "spotCheckRate", 0.1);
+        scheduling = values.getOrDefault("scheduling", "least-work");
+    }
+
+    // The current configuration, read from the file the first time
+    public static Configuration get()
+    {
+        Configuration configuration = current;
+        if(configuration == null)
+        {
+            synchronized (Configuration.class)
+            {
+                if(current == null)
+                {
+                    current = load();
+                }
+                configuration = current;
+            }
+        }
+        return configuration;
+    }
+
+    /**
+     * Removes the --key=value options that name a property from the arguments, they override the
+     * system properties and the file. Returns the other arguments.
+     * **/
+    public static String[] parseArguments(String[] args)
+    {
+        ArrayList<String> otherArgs = new ArrayList<>();
+        for(String arg : args)
+        {
+            int equals = arg.indexOf('=');
+            if(arg.startsWith("--") && equals > 2 && KEYS.contains(arg.substring(2, equals)))
+            {
+                commandLineValues.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+            else
+            {
+                otherArgs.add(arg);
+            }
+        }
+        reload();
+        return otherArgs.toArray(new String[0]);
+    }
+
+    // Reads the file again in a daemon thread each time it changes
+    public static void watch()
+    {
+        Thread thread = new Thread(Configuration::watchFile, "configuration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static synchronized void reload()
+    {
+        current = load();
+    }
+
+    private static synchronized Configuration load()
+    {
+        Map<String, String> values = new HashMap<>();
+        File propertiesFile = new File(PROPERTIES_FILENAME);
+        Properties properties = new Properties();
+        try (Reader reader = new FileReader(propertiesFile))
+        {
+            properties.load(reader);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+        }
+        for(String key : KEYS)
+        {
+            String value = commandLineValues.get(key);
+            if(value == null)
+            {
+                value = System.getProperty(key);
+            }
+            if(value == null)
+            {
+                value = properties.getProperty(key);
+            }
+            if(value != null)
+            {
+                values.put(key, value.trim());
+            }
+        }
+        return new Configuration(values);
+    }
+
+    private static void watchFile()
+    {
+        Path file = new File(PROPERTIES_FILENAME).getAbsoluteFile().toPath();
+        try (WatchService watchService = FileSystems.getDefault().newWatchService())
+        {
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            while(true)
+            {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for(WatchEvent<?> event : key.pollEvents())
+                {
+                    changed |= file.getFileName().equals(event.context());
+                }
+                key.reset();
+                if(changed)
+                {
+                    reload();
+                    System.out.println("Configuration reloaded from " + PROPERTIES_FILENAME + ".");
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: Could not watch " + PROPERTIES_FILENAME + ". " + e.getMessage());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int getInt(Map<String, String> values, String key, int defaultValue)
+    {
+        String value = values.get(key);
+        try
+        {
+            return value == null ? defaultValue : Integer.parseInt(value);
+        }
+        catch (NumberFormatException e)
+        {
+            System.err.println("Error: Expected int value for " + key + " in " + PROPERTIES_FILENAME + ", using " + defaultValue + ".");
+            return defaultValue;
+        }
+    }
+
+    // A port every program needs: a missing one is reported, not left to fail later as an RMI error
+    private static int getPort(Map<String, String> values, String key, int defaultPort)
+    {
+        if(values.get(key) == null)
+        {
+            System.err.println("Error: " + key + " is missing from " + PROPERTIES_FILENAME + ", using " + defaultPort + ".");
+            return defaultPort;
+        }
+        return getInt(values, key, defaultPort);
+    }
+
+    private static double getDouble(Map<String, String> values, String key, double defaultValue)
+    {
+        String value = values.get(key);
+        try
+        {
+            return value == null ? defaultValue : Double.parseDouble(value);
+        }
+        catch (NumberFormatException e)
+        {
+            System.err.println("Error: Expected number value for " + key + " in " + PROPERTIES_FILENAME + ", using " + defaultValue + ".");
+            return defaultValue;
+        }
+    }
+
+    private static boolean getBoolean(Map<String, String> values, String key, boolean defaultValue)
+    {
+        String value = values.get(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    public Boolean getSecure() {
+        return secure;
+    }
+
+    public String getServiceIp() {
+        return serviceIp;
+    }
+
+    public int getRmiPort() {
+        return rmiPort;
+    }
+
+    public int getServicePort() {
+        return servicePort;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public boolean isCheckpoint() {
+        return checkpoint;
+    }
+
+    public int getMaxInFlightTasks() {
+        return maxInFlightTasks;
+    }
+
+    public boolean isHedging() {
+        return hedging;
+    }
+
+    public int getMaxCopies() {
+        return maxCopies;
+    }
+
+    public long getRetryDelayMillis() {
+        return retryDelayMillis;
+    }
+
+    public double getChunkDecrease() {
+        return chunkDecrease;
+    }
+
+    public boolean isCostBasedTasks() {
+        return costBasedTasks;
+    }
+
+    public boolean isResultVectors() {
+        return resultVectors;
+    }
+
+    public String getVerification() {
+        return verification;
+    }
+
+    public double getSpotCheckRate() {
+        return spotCheckRate;
+    }
+
+    public String getScheduling() {
+        return scheduling;
+    }
+}
@@ -0,0 +1,64 @@
+package shared;
+
+/**
+ * Versions rapides des operations de la classe Operations.
+ *
+ * Les resultats sont identiques bit a bit a ceux de l'implementation de reference,
+ * debordements d'entiers inclus. Dans shared : les serveurs calculent avec, le repartiteur
+ * s'en sert pour verifier les resultats des serveurs.
+ *
+ */
+public class FastOperations {
+
+	/**
+	 * Pell par doublement : P(2k) = P(k) * (P(k+1) + P(k-1)) et P(2k+1) = P(k+1)^2 + P(k)^2.
+	 * Toutes les operations sont des additions et multiplications sur des int, le resultat
+	 * deborde donc exactement comme la recursion de reference.
+	 */
+	public static int pell(int x) {
+		if (x < 0)
+			throw new IllegalArgumentException("pell(" + x + ") : la reference ne termine pas");
+
+		int pk = 0;  // P(k)
+		int pk1 = 1; // P(k+1)
+		for (int bit = Integer.highestOneBit(x); bit != 0; bit >>>= 1)
+		{
+			int pkMinus1 = pk1 - 2 * pk;
+			int p2k = pk * (pk1 + pkMinus1);
+			int p2k1 = pk1 * pk1 + pk * pk;
+			if ((x & bit) == 0)
+			{
+				pk = p2k;
+				pk1 = p2k1;
+			}
+			else
+			{
+				pk = p2k1;
+				pk1 = 2 * p2k1 + p2k;
+			}
+		}
+		return pk;
+	}
+
+	/**
+	 * Plus grand facteur premier de x par division d'essai bornee par la racine carree.
+	 */
+	public static int prime(int x) {
+		if (x <= 1)
+			return 0;
+
+		int remaining = x;
+		int highestPrime = 0;
+		for (int i = 2; (long) i * i <= remaining; ++i)
+		{
+			while (remaining % i == 0)
+			{
+				highestPrime = i;
+				remaining /= i;
+			}
+		}
+
+		return remaining > 1 ? remaining : highestPrime;
+	}
+
+}
@@ -0,0 +1,71 @@
+package shared;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogramme de durees (ou de toute valeur positive) a seaux en puissances de 2.
+ *
+ * record() ne prend aucun verrou et n'alloue rien : un increment dans le seau de la valeur,
+ * plus le nombre, la somme et le maximum. Les centiles sont donc approches a un facteur 2 pres
+ * (borne superieure du seau), ce qui suffit pour voir un serveur lent.
+ * **/
+public class Histogram {
+
+    private static final int NB_BUCKETS = 64; // bucket i holds the values in [2^(i-1), 2^i[, bucket 0 holds 0
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long value)
+    {
+        value = Math.max(0, value);
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    public long getMean()
+    {
+        long nbValues = count.sum();
+        return nbValues == 0 ? 0 : sum.sum() / nbValues;
+    }
+
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    // Upper bound of the bucket holding the given fraction (0.5 for the median) of the values
+    public long getPercentile(double fraction)
+    {
+        long[] counts = new long[NB_BUCKETS];
+        long nbValues = 0;
+        for(int i = 0; i < NB_BUCKETS; i++)
+        {
+            counts[i] = buckets.get(i);
+            nbValues += counts[i];
+        }
+        long rank = (long) Math.ceil(fraction * nbValues);
+        long seen = 0;
+        for(int i = 0; i < NB_BUCKETS; i++)
+        {
+            seen += counts[i];
+            if(seen >= rank && counts[i] > 0)
+            {
+                long upperBound = i == 0 ? 0 : (1L << i) - 1;
+                return Math.min(upperBound, getMax());
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,42 @@
+package shared;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Changements de la liste des serveurs depuis une version connue du repartiteur.
+ *
+ * Si la version demandee est trop ancienne pour le service, la reponse est une liste complete
+ * (isFullSnapshot) : joined contient alors tous les serveurs, et les autres sont partis.
+ * **/
+public class MembershipChanges implements Serializable {
+
+    private final long version;
+    private final boolean fullSnapshot;
+    private final ArrayList<OperationServerSharedInfo> joined;
+    private final ArrayList<OperationServerSharedInfo> left;
+
+    public MembershipChanges(long version, boolean fullSnapshot, ArrayList<OperationServerSharedInfo> joined, ArrayList<OperationServerSharedInfo> left)
+    {
+        this.version = version;
+        this.fullSnapshot = fullSnapshot;
+        this.joined = joined;
+        this.left = left;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isFullSnapshot() {
+        return fullSnapshot;
+    }
+
+    public ArrayList<OperationServerSharedInfo> getJoined() {
+        return joined;
+    }
+
+    public ArrayList<OperationServerSharedInfo> getLeft() {
+        return left;
+    }
+}
@@ -0,0 +1,261 @@
+package shared;
+
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metriques d'un processus (repartiteur ou serveur de calcul), lisibles pendant le travail.
+ *
+ * Les compteurs (LongAdder) et histogrammes sont crees une fois, puis l'appelant garde la
+ * reference : enregistrer une valeur n'alloue rien et ne prend aucun verrou. Les valeurs sont
+ * publiees par JMX (MBean "tp2:type=<nom>", par exemple avec jconsole) et, si un port est donne,
+ * en texte ("nom valeur" par ligne) sur http://127.0.0.1:<port>/metrics.
+ * **/
+public class Metrics implements DynamicMBean {
+
+    private static final long RATE_INTERVAL_NANOS = 1000000000L;
+    private static final double[] PERCENTILES = { 0.5, 0.9, 0.99 };
+
+    // Operations per second of a counter, over the last interval of at least RATE_INTERVAL_NANOS
+    private static class Rate implements LongSupplier
+    {
+        private final LongAdder counter;
+        private long lastCount;
+        private long lastTime = System.nanoTime();
+        private long rate;
+
+        Rate(LongAdder counter)
+        {
+            this.counter = counter;
+            this.lastCount = counter.sum();
+        }
+
+        @Override
+        public synchronized long getAsLong()
+        {
+            long now = System.nanoTime();
+            if(now - lastTime >= RATE_INTERVAL_NANOS)
+            {
+                long currentCount = counter.sum();
+                rate = (currentCount - lastCount) * 1000000000L / (now - lastTime);
+                lastCount = currentCount;
+                lastTime = now;
+            }
+            return rate;
+        }
+    }
+
+    private final String name;
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+    private HttpServer httpServer;
+
+    public Metrics(String name)
+    {
+        this.name = name;
+    }
+
+    // Returns the counter with this name, created on the first call
+    public LongAdder counter(String counterName)
+    {
+        return counters.computeIfAbsent(counterName, key -> new LongAdder());
+    }
+
+    // Returns the histogram with this name, created on the first call
+    public Histogram histogram(String histogramName)
+    {
+        return histograms.computeIfAbsent(histogramName, key -> new Histogram());
+    }
+
+    // Publishes a histogram recorded by another component
+    public void addHistogram(String histogramName, Histogram histogram)
+    {
+        histograms.put(histogramName, histogram);
+    }
+
+    // The value is read from the supplier each time the metrics are published
+    public void gauge(String gaugeName, LongSupplier value)
+    {
+        gauges.put(gaugeName, value);
+    }
+
+    // Publishes the number of increments per second of the counter
+    public void rate(String gaugeName, LongAdder counter)
+    {
+        gauge(gaugeName, new Rate(counter));
+    }
+
+    /**
+     * Registers the MBean, and starts the text endpoint on the loopback interface if httpPort > 0
+     * **/
+    public void export(int httpPort)
+    {
+        try
+        {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("tp2:type=" + name);
+            if(!mBeanServer.isRegistered(objectName))
+            {
+                mBeanServer.registerMBean(this, objectName);
+            }
+        }
+        catch (Exception e)
+        {
+            System.err.println("Error: Could not register the metrics MBean. " + e.getMessage());
+        }
+
+        if(httpPort <= 0)
+        {
+            return;
+        }
+        try
+        {
+            httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), httpPort), 0);
+            httpServer.createContext("/metrics", exchange ->
+            {
+                byte[] body = toString().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody())
+                {
+                    out.write(body);
+                }
+            });
+            httpServer.start();
+            System.out.println("Metrics available on http://127.0.0.1:" + httpPort + "/metrics");
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error: Could not start the metrics endpoint. " + e.getMessage());
+        }
+    }
+
+    // Stops the text endpoint, whose thread would keep the process alive
+    public void close()
+    {
+        if(httpServer != null)
+        {
+            httpServer.stop(0);
+            httpServer = null;
+        }
+    }
+
+    // Current value of every metric, histograms flattened into count, mean, percentiles and max
+    public Map<String, Long> snapshot()
+    {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for(Map.Entry<String, LongAdder> counter : counters.entrySet())
+        {
+            values.put(counter.getKey(), counter.getValue().sum());
+        }
+        for(Map.Entry<String, LongSupplier> gauge : gauges.entrySet())
+        {
+            values.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+        for(Map.Entry<String, Histogram> entry : histograms.entrySet())
+        {
+            Histogram histogram = entry.getValue();
+            values.put(entry.getKey() + ".count", histogram.getCount());
+            values.put(entry.getKey() + ".mean", histogram.getMean());
+            for(double percentile : PERCENTILES)
+            {
+                values.put(entry.getKey() + ".p" + Math.round(percentile * 100), histogram.getPercentile(percentile));
+            }
+            values.put(entry.getKey() + ".max", histogram.getMax());
+        }
+        return values;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder text = new StringBuilder();
+        for(Map.Entry<String, Long> value : snapshot().entrySet())
+        {
+            text.append(name).append('.').append(value.getKey()).append(' ').append(value.getValue()).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**** DynamicMBean: one read-only Long attribute per value of snapshot() ****/
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException
+    {
+        Long value = snapshot().get(attribute);
+        if(value == null)
+        {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes)
+    {
+        Map<String, Long> values = snapshot();
+        AttributeList attributeList = new AttributeList();
+        for(String attribute : attributes)
+        {
+            if(values.containsKey(attribute))
+            {
+                attributeList.add(new Attribute(attribute, values.get(attribute)));
+            }
+        }
+        return attributeList;
+    }
+
+    // No attribute is writable (see getMBeanInfo)
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException
+    {
+        throw new AttributeNotFoundException("Metric " + attribute.getName() + " is read-only.");
+    }
+
+    // No attribute is set
+    @Override
+    public AttributeList setAttributes(AttributeList attributes)
+    {
+        return new AttributeList();
+    }
+
+    // The MBean has no operation
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException
+    {
+        throw new ReflectionException(new NoSuchMethodException(actionName), "No operation on metrics.");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo()
+    {
+        Map<String, Long> values = snapshot();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+        int i = 0;
+        for(String attribute : values.keySet())
+        {
+            attributes[i++] = new MBeanAttributeInfo(attribute, Long.class.getName(), attribute, true, false, false);
+        }
+        return new MBeanInfo(getClass().getName(), "Metriques " + name, attributes, null, null, null);
+    }
+}
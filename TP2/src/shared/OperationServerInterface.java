@@ -6,4 +6,8 @@ import java.util.ArrayList;
 
 public interface OperationServerInterface extends Remote {
     int calculateResult(String loadBalancerUser, String loadBalancerPassword, ArrayList<String> operationsList) throws RemoteException, TaskRejectedException, FalseIdentityException;
+    int calculatePackedResult(String loadBalancerUser, String loadBalancerPassword, PackedTask task) throws RemoteException, TaskRejectedException, FalseIdentityException;
+    int calculatePackedResult(String sessionToken, PackedTask task) throws RemoteException, TaskRejectedException, FalseIdentityException;
+    int[] calculatePackedResults(String sessionToken, PackedTask task) throws RemoteException, TaskRejectedException, FalseIdentityException;
+    void ping() throws RemoteException;
 }
@@ -0,0 +1,97 @@
+package shared;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Tache encodee en tableaux primitifs : un opcode et une operande par operation.
+ * Le repartiteur analyse les lignes "pell 24" une seule fois, le serveur n'a plus
+ * qu'a parcourir les tableaux.
+ * **/
+public class PackedTask implements Serializable {
+
+    public static final byte OP_PELL = 0;
+    public static final byte OP_PRIME = 1;
+
+    private final byte[] opcodes;
+    private final int[] operands;
+    // Index of the first operation in the operations file, known only by the load balancer
+    private transient long firstOperation = 0;
+
+    public PackedTask(byte[] opcodes, int[] operands)
+    {
+        if(opcodes.length != operands.length)
+        {
+            throw new IllegalArgumentException("Expected as many opcodes as operands.");
+        }
+        this.opcodes = opcodes;
+        this.operands = operands;
+    }
+
+    /**
+     * Parses operations such as "prime 5571". Unknown operations are ignored, as in calculateResult.
+     * **/
+    public static PackedTask parse(List<String> operationsList)
+    {
+        byte[] opcodes = new byte[operationsList.size()];
+        int[] operands = new int[operationsList.size()];
+        int nbOperations = 0;
+        for(String operation : operationsList)
+        {
+            String[] splitedOp = operation.split(" ");
+            String opName = splitedOp[0];
+            int opValue = Integer.parseInt(splitedOp[1]);
+
+            if(opName.equals("pell"))
+            {
+                opcodes[nbOperations] = OP_PELL;
+                operands[nbOperations++] = opValue;
+            }
+            else if(opName.equals("prime"))
+            {
+                opcodes[nbOperations] = OP_PRIME;
+                operands[nbOperations++] = opValue;
+            }
+        }
+
+        PackedTask task = new PackedTask(opcodes, operands);
+        return nbOperations == operationsList.size() ? task : task.slice(0, nbOperations);
+    }
+
+    // Returns a copy of the operations in [from, to[
+    public PackedTask slice(int from, int to)
+    {
+        byte[] sliceOpcodes = new byte[to - from];
+        int[] sliceOperands = new int[to - from];
+        System.arraycopy(opcodes, from, sliceOpcodes, 0, to - from);
+        System.arraycopy(operands, from, sliceOperands, 0, to - from);
+        PackedTask slice = new PackedTask(sliceOpcodes, sliceOperands);
+        slice.firstOperation = firstOperation + from;
+        return slice;
+    }
+
+    public long getFirstOperation()
+    {
+        return firstOperation;
+    }
+
+    public void setFirstOperation(long firstOperation)
+    {
+        this.firstOperation = firstOperation;
+    }
+
+    public int size()
+    {
+        return opcodes.length;
+    }
+
+    public byte[] getOpcodes()
+    {
+        return opcodes;
+    }
+
+    public int[] getOperands()
+    {
+        return operands;
+    }
+}
@@ -0,0 +1,26 @@
+package shared;
+
+import java.io.Serializable;
+
+/**
+ * Jeton de session remis au repartiteur par le service d'authentification.
+ * La duree de vie est relative pour ne pas dependre des horloges des machines.
+ * **/
+public class SessionToken implements Serializable {
+    private String value;
+    private long lifetimeMillis;
+
+    public SessionToken(String value, long lifetimeMillis)
+    {
+        this.value = value;
+        this.lifetimeMillis = lifetimeMillis;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public long getLifetimeMillis() {
+        return lifetimeMillis;
+    }
+}
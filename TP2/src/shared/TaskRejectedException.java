@@ -1,7 +1,40 @@
 package shared;
 
 public class TaskRejectedException extends Exception {
+
+        private final int freeOperations; // room left in the server's queue, -1 if unknown
+        private final int maxOperations; // largest task accepted by the server, -1 if unknown
+        private final long estimatedWaitMillis; // time before the queued work is done, -1 if unknown
+
         public TaskRejectedException() {
             super("The server has rejected the task due to limited resources.");
+            this.freeOperations = -1;
+            this.maxOperations = -1;
+            this.estimatedWaitMillis = -1;
+        }
+
+        // Rejected by the admission control of the server, with hints for the load balancer
+        public TaskRejectedException(int freeOperations, int maxOperations, long estimatedWaitMillis) {
+            super("The server has rejected the task: tasks of at most " + maxOperations + " operations, room for "
+                    + freeOperations + " operations in its queue, estimated wait " + estimatedWaitMillis + " ms.");
+            this.freeOperations = freeOperations;
+            this.maxOperations = maxOperations;
+            this.estimatedWaitMillis = estimatedWaitMillis;
+        }
+
+        public boolean hasHints() {
+            return maxOperations >= 0;
+        }
+
+        public int getFreeOperations() {
+            return freeOperations;
+        }
+
+        public int getMaxOperations() {
+            return maxOperations;
+        }
+
+        public long getEstimatedWaitMillis() {
+            return estimatedWaitMillis;
         }
 }